@@ -14,6 +14,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.clock.data.EventRepository;
 import com.example.clock.model.Event;
+import com.example.clock.model.Recurrence;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -21,6 +22,10 @@ import java.util.Locale;
 
 public class AddEventActivity extends AppCompatActivity {
 
+    // Edit mode: same extras as DetailActivity, the id plus an optional parcelled copy
+    public static final String EXTRA_EVENT_ID = DetailActivity.EXTRA_EVENT_ID;
+    public static final String EXTRA_EVENT = DetailActivity.EXTRA_EVENT;
+
     private EditText nameInput;
     private EditText placeInput;
     private Button dateButton;
@@ -35,6 +40,17 @@ public class AddEventActivity extends AppCompatActivity {
 
     private android.widget.CheckBox temporaryCheckbox;
 
+    // Spinner position -> frequency; position 0 ("Never") is a one-off event,
+    // the rest follow Frequency's declaration order
+    private static final Recurrence.Frequency[] REPEAT_FREQUENCIES = {
+            null,
+            Recurrence.Frequency.DAILY,
+            Recurrence.Frequency.WEEKLY,
+            Recurrence.Frequency.MONTHLY,
+            Recurrence.Frequency.YEARLY
+    };
+    private android.widget.Spinner repeatSpinner;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -43,6 +59,7 @@ public class AddEventActivity extends AppCompatActivity {
         nameInput = findViewById(R.id.edit_event_name);
         placeInput = findViewById(R.id.edit_event_place);
         temporaryCheckbox = findViewById(R.id.checkbox_temporary);
+        repeatSpinner = findViewById(R.id.spinner_repeat);
         dateButton = findViewById(R.id.btn_pick_date);
         timeButton = findViewById(R.id.btn_pick_time);
         saveButton = findViewById(R.id.btn_save_event);
@@ -51,13 +68,32 @@ public class AddEventActivity extends AppCompatActivity {
         dateFormat = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
         timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
 
-        if (getIntent().hasExtra("event")) {
-            eventToEdit = (Event) getIntent().getSerializableExtra("event");
-            nameInput.setText(eventToEdit.getName());
-            placeInput.setText(eventToEdit.getPlace());
-            temporaryCheckbox.setChecked(eventToEdit.isTemporary());
-            selectedCalendar.setTimeInMillis(eventToEdit.getTimestamp());
+        String eventId = getIntent().getStringExtra(EXTRA_EVENT_ID);
+        if (eventId != null) {
             saveButton.setText("Update");
+            EventRepository repository = EventRepository.getInstance(this);
+            Event known = repository.peekById(eventId);
+            if (known == null) {
+                known = getIntent().getParcelableExtra(EXTRA_EVENT);
+            }
+            if (known != null) {
+                populate(known);
+            } else {
+                // Not in memory yet; don't let a save create a duplicate meanwhile
+                saveButton.setEnabled(false);
+                repository.runAsync(this, () -> repository.getById(eventId), loaded -> {
+                    if (loaded == null) {
+                        // Deleted since the screen was opened
+                        finish();
+                        return;
+                    }
+                    populate(loaded);
+                    saveButton.setEnabled(true);
+                }, error -> {
+                    Toast.makeText(this, "Could not load the event", Toast.LENGTH_SHORT).show();
+                    finish();
+                });
+            }
         }
 
         updateDateButton();
@@ -87,6 +123,28 @@ public class AddEventActivity extends AppCompatActivity {
         });
     }
 
+    /** Opens the editor for an event by id; {@code withCopy} also parcels it, for events not in the repository. */
+    public static android.content.Intent newIntent(android.content.Context context, Event event, boolean withCopy) {
+        android.content.Intent intent = new android.content.Intent(context, AddEventActivity.class);
+        intent.putExtra(EXTRA_EVENT_ID, event.getId());
+        if (withCopy) {
+            intent.putExtra(EXTRA_EVENT, event);
+        }
+        return intent;
+    }
+
+    private void populate(Event event) {
+        eventToEdit = event;
+        nameInput.setText(event.getName());
+        placeInput.setText(event.getPlace());
+        temporaryCheckbox.setChecked(event.isTemporary());
+        Recurrence rule = event.getRecurrence();
+        repeatSpinner.setSelection(rule != null ? rule.getFrequency().ordinal() + 1 : 0);
+        selectedCalendar.setTimeInMillis(event.getTimestamp());
+        updateDateButton();
+        updateTimeButton();
+    }
+
     private void applyTheme() {
         int color = com.example.clock.utils.ThemeHelper.getAccentColor(this);
         saveButton.setBackgroundTintList(android.content.res.ColorStateList.valueOf(color));
@@ -131,6 +189,23 @@ public class AddEventActivity extends AppCompatActivity {
         timeButton.setText(timeFormat.format(selectedCalendar.getTime()));
     }
 
+    /**
+     * The rule for the chosen frequency, or null for "Never". An edited series
+     * keeps its rule (interval, end, anchor) unless the frequency or the time
+     * changed, in which case it restarts from the chosen time.
+     */
+    private Recurrence buildRecurrence(long timestamp) {
+        Recurrence.Frequency frequency = REPEAT_FREQUENCIES[repeatSpinner.getSelectedItemPosition()];
+        if (frequency == null) {
+            return null;
+        }
+        Recurrence existing = eventToEdit != null ? eventToEdit.getRecurrence() : null;
+        if (existing == null || existing.getFrequency() != frequency) {
+            return Recurrence.every(frequency, timestamp);
+        }
+        return timestamp == eventToEdit.getTimestamp() ? existing : existing.withStart(timestamp);
+    }
+
     private void saveEvent() {
         String name = nameInput.getText().toString().trim();
         String place = placeInput.getText().toString().trim();
@@ -141,10 +216,7 @@ public class AddEventActivity extends AppCompatActivity {
             return;
         }
 
-        EventRepository repository = new EventRepository(this);
-
-        boolean calendarSuccess = false;
-        boolean syncAttempted = false;
+        EventRepository repository = EventRepository.getInstance(this);
 
         // Logic:
         // Use eventToEdit if it exists, else new Event.
@@ -152,29 +224,43 @@ public class AddEventActivity extends AppCompatActivity {
         // If update fails or ID is null, try INSERT.
         // If INSERT succeeds, update the ID in the event.
 
-        Event eventWorkingCopy;
+        final Event eventWorkingCopy;
         if (eventToEdit != null) {
-            eventToEdit.setName(name);
-            eventToEdit.setPlace(place);
-            eventToEdit.setTimestamp(selectedCalendar.getTimeInMillis());
-            eventToEdit.setTemporary(isTemporary);
-            eventWorkingCopy = eventToEdit;
+            // Edit a copy: eventToEdit is usually the repository's cached instance,
+            // which must only change through the repository
+            eventWorkingCopy = new Event(eventToEdit.getId(), name, place, selectedCalendar.getTimeInMillis());
+            eventWorkingCopy.setCalendarEventId(eventToEdit.getCalendarEventId());
+            eventWorkingCopy.setTemporary(isTemporary);
         } else {
             eventWorkingCopy = new Event(name, place, selectedCalendar.getTimeInMillis());
             eventWorkingCopy.setTemporary(isTemporary);
         }
-
-        // Calendar Sync Logic
-        if (!isTemporary) {
-            syncAttempted = true;
-            if (eventWorkingCopy.getCalendarEventId() != null) {
-                boolean updated = com.example.clock.utils.CalendarUtils.updateEventInCalendar(this,
-                        eventWorkingCopy.getCalendarEventId(), eventWorkingCopy);
-                if (updated) {
-                    calendarSuccess = true;
+        eventWorkingCopy.setRecurrence(buildRecurrence(eventWorkingCopy.getTimestamp()));
+
+        // Calendar provider, repository and alarm work run off the main thread;
+        // block a second tap until it's done
+        saveButton.setEnabled(false);
+        repository.runWriteAsync(this, () -> {
+            boolean calendarSuccess = false;
+
+            // Calendar Sync Logic
+            if (!isTemporary) {
+                if (eventWorkingCopy.getCalendarEventId() != null) {
+                    boolean updated = com.example.clock.utils.CalendarUtils.updateEventInCalendar(this,
+                            eventWorkingCopy.getCalendarEventId(), eventWorkingCopy);
+                    if (updated) {
+                        calendarSuccess = true;
+                    } else {
+                        // Maybe it was deleted? Try to re-add?
+                        // Let's try to add as new if update failed
+                        long newId = com.example.clock.utils.CalendarUtils.addEventToCalendar(this,
+                                eventWorkingCopy);
+                        if (newId != -1) {
+                            eventWorkingCopy.setCalendarEventId(newId);
+                            calendarSuccess = true;
+                        }
+                    }
                 } else {
-                    // Maybe it was deleted? Try to re-add?
-                    // Let's try to add as new if update failed
                     long newId = com.example.clock.utils.CalendarUtils.addEventToCalendar(this, eventWorkingCopy);
                     if (newId != -1) {
                         eventWorkingCopy.setCalendarEventId(newId);
@@ -182,36 +268,35 @@ public class AddEventActivity extends AppCompatActivity {
                     }
                 }
             } else {
-                long newId = com.example.clock.utils.CalendarUtils.addEventToCalendar(this, eventWorkingCopy);
-                if (newId != -1) {
-                    eventWorkingCopy.setCalendarEventId(newId);
-                    calendarSuccess = true;
-                }
+                // It is temporary, so no sync.
+                // Requirement check: "not from the calendar".
+                // If it WAS in the calendar (calendarEventId != null), we might want to leave
+                // it or remove it?
+                // The request says "if is checked the event is not added to the calendar".
+                // It implies for NEW events or updates where we don't want it synced.
+                // For now, we just skip the sync call.
             }
-        } else {
-            // It is temporary, so no sync.
-            // Requirement check: "not from the calendar".
-            // If it WAS in the calendar (calendarEventId != null), we might want to leave
-            // it or remove it?
-            // The request says "if is checked the event is not added to the calendar".
-            // It implies for NEW events or updates where we don't want it synced.
-            // For now, we just skip the sync call.
-        }
-
-        // Save to repo (including new/updated ID and temporary flag)
-        repository.addEvent(eventWorkingCopy);
-        com.example.clock.utils.NotificationScheduler.scheduleNotification(this, eventWorkingCopy);
 
-        if (syncAttempted) {
-            if (calendarSuccess) {
-                Toast.makeText(this, "Event synced to Calendar", Toast.LENGTH_SHORT).show();
+            // Save to repo (including new/updated ID and temporary flag)
+            repository.addEvent(eventWorkingCopy);
+            // Already off the main thread: make the save durable before reporting it
+            repository.flush();
+            com.example.clock.utils.NotificationScheduler.scheduleNotification(this, eventWorkingCopy);
+            return calendarSuccess;
+        }, calendarSuccess -> {
+            if (!isTemporary) {
+                if (calendarSuccess) {
+                    Toast.makeText(this, "Event synced to Calendar", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, "Saved to app, but failed to sync to Calendar", Toast.LENGTH_LONG).show();
+                }
             } else {
-                Toast.makeText(this, "Saved to app, but failed to sync to Calendar", Toast.LENGTH_LONG).show();
+                Toast.makeText(this, "Temporary event saved (App only)", Toast.LENGTH_SHORT).show();
             }
-        } else {
-            Toast.makeText(this, "Temporary event saved (App only)", Toast.LENGTH_SHORT).show();
-        }
-
-        finish();
+            finish();
+        }, error -> {
+            Toast.makeText(this, "Could not save the event", Toast.LENGTH_LONG).show();
+            saveButton.setEnabled(true);
+        });
     }
 }
@@ -1,29 +1,32 @@
 package com.example.clock;
 
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.clock.model.Event;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.concurrent.TimeUnit;
-
 public class DetailActivity extends AppCompatActivity {
 
+    // Screens open an event by id and the event is looked up in the repository,
+    // so the screen always shows the stored version. EXTRA_EVENT is an optional
+    // parcelled copy for events the repository doesn't hold (archived history).
+    public static final String EXTRA_EVENT_ID = "event_id";
+    public static final String EXTRA_EVENT = "event";
+
     private TextView nameText;
     private TextView infoText;
-    private TextView daysText, hoursText, minutesText, secondsText;
+    private com.example.clock.utils.CountdownView countdownView;
     private android.widget.ImageView pinWidgetBtn;
 
     private Event event;
-    private Handler handler;
-    private Runnable runnable;
+    // False while showing the parcelled copy rather than the stored event
+    private boolean eventIsStored;
+    // Ticks from the shared clock while the screen is visible (onStart..onStop);
+    // re-made when the event or the shown resolution changes
+    private com.example.clock.utils.CountdownClock.Subscription tickSubscription;
+    private boolean visible;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -33,19 +36,40 @@ public class DetailActivity extends AppCompatActivity {
 
         nameText = findViewById(R.id.detail_event_name);
         infoText = findViewById(R.id.detail_event_info);
-        daysText = findViewById(R.id.countdown_days);
-        hoursText = findViewById(R.id.countdown_hours);
-        minutesText = findViewById(R.id.countdown_minutes);
-        secondsText = findViewById(R.id.countdown_seconds);
-
-        if (getIntent().hasExtra("event")) {
-            event = (Event) getIntent().getSerializableExtra("event");
-        }
+        countdownView = findViewById(R.id.countdown_view);
+        // Set once; toggling the mode only changes what the view draws
+        countdownView.setOnClickListener(new android.view.View.OnClickListener() {
+            @Override
+            public void onClick(android.view.View v) {
+                if (event == null) {
+                    return;
+                }
+                showTotalHoursMode = !showTotalHoursMode;
+                countdownView.setTotalHoursMode(showTotalHoursMode);
+                startCountdown();
+            }
+        });
 
-        if (event != null) {
-            setupUI();
-            startCountdown();
-            applyTheme();
+        String eventId = getIntent().getStringExtra(EXTRA_EVENT_ID);
+        com.example.clock.data.EventRepository repository = com.example.clock.data.EventRepository.getInstance(this);
+        // Usually already in memory: the list we came from was just read from it
+        Event stored = eventId != null ? repository.peekById(eventId) : null;
+        if (stored != null) {
+            eventIsStored = true;
+            showEvent(stored);
+        } else {
+            Event copy = getIntent().getParcelableExtra(EXTRA_EVENT);
+            if (copy != null) {
+                showEvent(copy);
+            }
+            if (eventId != null) {
+                repository.getByIdAsync(this, eventId, loaded -> {
+                    if (loaded != null) {
+                        eventIsStored = true;
+                        showEvent(loaded);
+                    }
+                });
+            }
         }
 
         android.widget.ImageView homeBtn = findViewById(R.id.btn_home);
@@ -76,9 +100,10 @@ public class DetailActivity extends AppCompatActivity {
         editBtn.setOnClickListener(new android.view.View.OnClickListener() {
             @Override
             public void onClick(android.view.View v) {
-                android.content.Intent intent = new android.content.Intent(DetailActivity.this, AddEventActivity.class);
-                intent.putExtra("event", event);
-                startActivity(intent);
+                if (event == null) {
+                    return;
+                }
+                startActivity(AddEventActivity.newIntent(DetailActivity.this, event, !eventIsStored));
                 finish(); // Finish detail so when we come back or save, we reload ??
                 // Actually, if we edit, we should probably finish this activity or reload it.
                 // Simplest: Finish this, open AddEvent (Edit mode). AddEvent finishes ->
@@ -90,15 +115,18 @@ public class DetailActivity extends AppCompatActivity {
         deleteBtn.setOnClickListener(new android.view.View.OnClickListener() {
             @Override
             public void onClick(android.view.View v) {
+                if (event == null) {
+                    return;
+                }
                 new com.google.android.material.dialog.MaterialAlertDialogBuilder(DetailActivity.this)
                         .setTitle("Delete Event?")
                         .setMessage("Are you sure you want to delete this event?")
                         .setPositiveButton("Delete", new android.content.DialogInterface.OnClickListener() {
                             public void onClick(android.content.DialogInterface dialog, int which) {
-                                com.example.clock.data.EventRepository repo = new com.example.clock.data.EventRepository(
-                                        DetailActivity.this);
-                                repo.deleteEvent(event);
-                                finish();
+                                com.example.clock.data.EventRepository repo = com.example.clock.data.EventRepository
+                                        .getInstance(DetailActivity.this);
+                                repo.edit().delete(event)
+                                        .commitAsync(DetailActivity.this, () -> finish());
                             }
                         })
                         .setNegativeButton("Cancel", null)
@@ -107,12 +135,46 @@ public class DetailActivity extends AppCompatActivity {
         });
     }
 
-    // Views to toggle visibility
-    private android.view.View layoutDays, layoutHours, layoutSeconds;
-    private android.view.View sepDayHour, sepHourMin, sepMinSec;
     private boolean showTotalHoursMode = false;
 
+    /** Opens the event by id; {@code withCopy} also parcels it, for events not in the repository. */
+    public static android.content.Intent newIntent(android.content.Context context, Event event, boolean withCopy) {
+        android.content.Intent intent = new android.content.Intent(context, DetailActivity.class);
+        intent.putExtra(EXTRA_EVENT_ID, event.getId());
+        if (withCopy) {
+            intent.putExtra(EXTRA_EVENT, event);
+        }
+        return intent;
+    }
+
+    private void showEvent(Event shown) {
+        long now = System.currentTimeMillis();
+        if (shown.isRecurring() && shown.getTimestamp() <= now) {
+            // Count down to the series' next occurrence rather than one that has passed
+            long next = shown.nextOccurrenceAfter(now);
+            if (next != com.example.clock.model.Recurrence.NONE) {
+                shown = shown.occurrenceAt(next);
+            }
+        }
+        boolean first = event == null;
+        boolean moved = first || event.getTimestamp() != shown.getTimestamp();
+        event = shown;
+        setupUI();
+        if (moved) {
+            // New anchor for the ticks
+            startCountdown();
+        } else {
+            updateTimer();
+        }
+        if (first) {
+            applyTheme();
+        }
+    }
+
     private void requestPinWidget() {
+        if (event == null) {
+            return;
+        }
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
             android.appwidget.AppWidgetManager appWidgetManager = getSystemService(
                     android.appwidget.AppWidgetManager.class);
@@ -133,8 +195,7 @@ public class DetailActivity extends AppCompatActivity {
 
     private void saveEventForWidgets(Event event) {
         android.content.SharedPreferences prefs = getSharedPreferences("widget_prefs", 0);
-        com.google.gson.Gson gson = new com.google.gson.Gson();
-        String json = gson.toJson(event);
+        String json = com.example.clock.data.EventCodec.encode(event);
         prefs.edit().putString("global_widget_event", json).apply();
 
         android.content.Intent intent = new android.content.Intent(this,
@@ -150,107 +211,47 @@ public class DetailActivity extends AppCompatActivity {
     private void setupUI() {
         nameText.setText(event.getName());
 
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy • HH:mm", Locale.getDefault());
-        String dateString = sdf.format(new Date(event.getTimestamp()));
+        String dateString = com.example.clock.utils.CountdownFormatter.formatDateTime(event.getTimestamp());
         String info = String.format("%s\n%s", event.getPlace(), dateString);
         infoText.setText(info);
+    }
 
-        // Find views for toggling
-        layoutDays = findViewById(R.id.layout_days);
-        layoutHours = findViewById(R.id.layout_hours);
-        layoutSeconds = findViewById(R.id.layout_seconds);
-
-        sepDayHour = findViewById(R.id.sep_day_hour);
-        sepHourMin = findViewById(R.id.sep_hour_min);
-        sepMinSec = findViewById(R.id.sep_min_sec);
-
-        android.view.View clockContainer = findViewById(R.id.clock_container);
-        if (clockContainer != null) {
-            clockContainer.setOnClickListener(new android.view.View.OnClickListener() {
-                @Override
-                public void onClick(android.view.View v) {
-                    showTotalHoursMode = !showTotalHoursMode;
-                    updateTimer();
-                }
-            });
+    private void startCountdown() {
+        stopCountdown();
+        if (!visible) {
+            // Shown once now; onStart subscribes
+            updateTimer();
+            return;
         }
+        // Anchored on the event time, so ticks land exactly when the shown value
+        // changes; the total-hours mode has no seconds to update
+        com.example.clock.utils.CountdownClock.Resolution resolution = showTotalHoursMode
+                ? com.example.clock.utils.CountdownClock.Resolution.MINUTES
+                : com.example.clock.utils.CountdownClock.Resolution.SECONDS;
+        tickSubscription = com.example.clock.utils.CountdownClock.getInstance(this)
+                .subscribe(resolution, event.getTimestamp(), now -> updateTimer());
+        // Catch up right away; the first tick then lands on the next boundary
+        updateTimer();
     }
 
-    private void startCountdown() {
-        handler = new Handler(Looper.getMainLooper());
-        runnable = new Runnable() {
-            @Override
-            public void run() {
-                updateTimer();
-                handler.postDelayed(this, 1000);
-            }
-        };
-        handler.post(runnable);
+    private void stopCountdown() {
+        if (tickSubscription != null) {
+            tickSubscription.cancel();
+            tickSubscription = null;
+        }
     }
 
     private void updateTimer() {
         long diff = event.getTimestamp() - System.currentTimeMillis();
-
-        if (diff < 0) {
-            daysText.setText("00");
-            hoursText.setText("00");
-            minutesText.setText("00");
-            secondsText.setText("00");
-            // Optional: Show "Event Started" or similar
-        } else {
-            if (showTotalHoursMode) {
-                // Mode: Total Hours : Minutes
-                if (layoutDays != null)
-                    layoutDays.setVisibility(android.view.View.GONE);
-                if (sepDayHour != null)
-                    sepDayHour.setVisibility(android.view.View.GONE);
-
-                // Show Hours and Minutes (Hours displays Total)
-                if (layoutHours != null)
-                    layoutHours.setVisibility(android.view.View.VISIBLE);
-                if (sepHourMin != null)
-                    sepHourMin.setVisibility(android.view.View.VISIBLE);
-
-                // Hide Seconds
-                if (layoutSeconds != null)
-                    layoutSeconds.setVisibility(android.view.View.GONE);
-                if (sepMinSec != null)
-                    sepMinSec.setVisibility(android.view.View.GONE);
-
-                long totalHours = TimeUnit.MILLISECONDS.toHours(diff);
-                long minutes = TimeUnit.MILLISECONDS.toMinutes(diff) % 60;
-
-                hoursText.setText(String.format(Locale.getDefault(), "%02d", totalHours));
-                minutesText.setText(String.format(Locale.getDefault(), "%02d", minutes));
-
-            } else {
-                // Standard: D : H : M : S
-                if (layoutDays != null)
-                    layoutDays.setVisibility(android.view.View.VISIBLE);
-                if (sepDayHour != null)
-                    sepDayHour.setVisibility(android.view.View.VISIBLE);
-
-                if (layoutHours != null)
-                    layoutHours.setVisibility(android.view.View.VISIBLE);
-                if (sepHourMin != null)
-                    sepHourMin.setVisibility(android.view.View.VISIBLE);
-
-                if (layoutSeconds != null)
-                    layoutSeconds.setVisibility(android.view.View.VISIBLE);
-                if (sepMinSec != null)
-                    sepMinSec.setVisibility(android.view.View.VISIBLE);
-
-                long days = TimeUnit.MILLISECONDS.toDays(diff);
-                long hours = TimeUnit.MILLISECONDS.toHours(diff) % 24;
-                long minutes = TimeUnit.MILLISECONDS.toMinutes(diff) % 60;
-                long seconds = TimeUnit.MILLISECONDS.toSeconds(diff) % 60;
-
-                daysText.setText(String.format(Locale.getDefault(), "%02d", days));
-                hoursText.setText(String.format(Locale.getDefault(), "%02d", hours));
-                minutesText.setText(String.format(Locale.getDefault(), "%02d", minutes));
-                secondsText.setText(String.format(Locale.getDefault(), "%02d", seconds));
-            }
+        if (diff < 0 && event.isRecurring()
+                && event.nextOccurrenceAfter(System.currentTimeMillis()) != com.example.clock.model.Recurrence.NONE) {
+            // This occurrence just started; move on to the next one
+            showEvent(event);
+            return;
         }
+
+        // Negative (started) shows all zeros
+        countdownView.setRemaining(diff);
     }
 
     private void applyTheme() {
@@ -275,21 +276,24 @@ public class DetailActivity extends AppCompatActivity {
             pinwdg.setColorFilter(color, android.graphics.PorterDuff.Mode.SRC_IN);
 
         // Tint the countdown numbers
-        if (daysText != null)
-            daysText.setTextColor(color);
-        if (hoursText != null)
-            hoursText.setTextColor(color);
-        if (minutesText != null)
-            minutesText.setTextColor(color);
-        if (secondsText != null)
-            secondsText.setTextColor(color);
+        countdownView.setDigitColor(color);
     }
 
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (handler != null && runnable != null) {
-            handler.removeCallbacks(runnable);
+    protected void onStart() {
+        super.onStart();
+        visible = true;
+        if (event != null) {
+            startCountdown();
         }
     }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Detail screens stack up (one per event opened from history); a
+        // stopped one must not keep the clock ticking for it
+        visible = false;
+        stopCountdown();
+    }
 }
@@ -1,6 +1,5 @@
 package com.example.clock;
 
-import android.content.Intent;
 import android.os.Bundle;
 
 import androidx.appcompat.app.AppCompatActivity;
@@ -9,10 +8,9 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.clock.adapter.EventAdapter;
 import com.example.clock.data.EventRepository;
+import com.example.clock.data.HistoryPager;
 import com.example.clock.model.Event;
-
-import java.util.ArrayList;
-import java.util.List;
+import com.example.clock.model.EventTable;
 
 public class HistoryActivity extends AppCompatActivity {
 
@@ -20,25 +18,64 @@ public class HistoryActivity extends AppCompatActivity {
     private EventAdapter adapter;
     private EventRepository repository;
 
+    // Data version the list was built from, and when the next upcoming event
+    // turns into history; until either changes there is nothing to reload
+    private long loadedVersion = -1;
+    private long loadedUntil = Long.MIN_VALUE;
+
+    // History is read a page at a time, newest first: live past events, then
+    // archived months. At most HISTORY_MAX_PAGES are held, the next page is
+    // fetched once the visible rows come within PREFETCH_ROWS of an end.
+    private static final int HISTORY_PAGE_SIZE = 50;
+    private static final int HISTORY_MAX_PAGES = 5;
+    private static final int PREFETCH_ROWS = 10;
+    private HistoryPager pager;
+
+    private final EventRepository.OnEventsChangedListener eventsChangedListener = (version, changedIds) -> {
+        if (!getLifecycle().getCurrentState().isAtLeast(androidx.lifecycle.Lifecycle.State.RESUMED)) {
+            return;
+        }
+        if (touchesHistory(changedIds)) {
+            loadHistoryEvents();
+        } else {
+            loadedVersion = version;
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_history);
 
-        repository = new EventRepository(this);
+        repository = EventRepository.getInstance(this);
+        repository.addOnEventsChangedListener(eventsChangedListener);
         recyclerView = findViewById(R.id.recycler_view_history);
         adapter = new EventAdapter();
 
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
         recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView view, int dx, int dy) {
+                checkVisibleRange();
+            }
+        });
+
+        pager = new HistoryPager(repository, this, HISTORY_PAGE_SIZE, HISTORY_MAX_PAGES,
+                new HistoryPager.Listener() {
+                    @Override
+                    public void onWindowChanged(EventTable window) {
+                        // A short page may not scroll at all, so check once it is shown and laid out
+                        adapter.setEvents(window, () -> recyclerView.post(HistoryActivity.this::checkVisibleRange));
+                    }
+                });
 
         // On history click, maybe just show detail (countdown will be negative/done)
         adapter.setOnEventClickListener(new EventAdapter.OnEventClickListener() {
             @Override
             public void onEventClick(Event event) {
-                Intent intent = new Intent(HistoryActivity.this, DetailActivity.class);
-                intent.putExtra("event", event);
-                startActivity(intent);
+                // Archived rows aren't in the repository, so send a copy along with the id
+                startActivity(DetailActivity.newIntent(HistoryActivity.this, event, true));
             }
         });
     }
@@ -46,19 +83,49 @@ public class HistoryActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        loadHistoryEvents();
+        if (repository.getVersion() != loadedVersion || System.currentTimeMillis() >= loadedUntil) {
+            loadHistoryEvents();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        repository.removeOnEventsChangedListener(eventsChangedListener);
     }
 
     private void loadHistoryEvents() {
-        List<Event> allEvents = repository.getEvents();
-        List<Event> pastEvents = new ArrayList<>();
-        long now = System.currentTimeMillis();
+        final long version = repository.getVersion();
+        loadedVersion = version;
+        // Rows that finish after this are past events the list doesn't have yet
+        repository.getUpcomingAsync(this, System.currentTimeMillis(), 1, next -> {
+            if (loadedVersion == version) {
+                loadedUntil = next.isEmpty() ? Long.MAX_VALUE : next.get(0).getTimestamp();
+            }
+        });
+        // In place: keeps the pages (and scroll position) the list is at
+        pager.refresh();
+    }
 
-        for (Event e : allEvents) {
-            if (e.getTimestamp() <= now) {
-                pastEvents.add(e);
+    /**
+     * Whether a change can show in the list. Only events that are still
+     * upcoming and not in the window can't; anything else (past, removed,
+     * archived, or not in memory) gets the pages re-read.
+     */
+    private boolean touchesHistory(java.util.Set<String> changedIds) {
+        long now = System.currentTimeMillis();
+        for (String id : changedIds) {
+            Event event = repository.peekById(id);
+            if (event == null || event.getTimestamp() <= now || pager.holds(id)) {
+                return true;
             }
         }
-        adapter.setEvents(pastEvents);
+        return false;
+    }
+
+    private void checkVisibleRange() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        pager.onVisibleRange(layoutManager.findFirstVisibleItemPosition(),
+                layoutManager.findLastVisibleItemPosition(), PREFETCH_ROWS);
     }
 }
@@ -13,8 +13,6 @@ import com.example.clock.data.EventRepository;
 import com.example.clock.model.Event;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import java.util.List;
-
 public class MainActivity extends AppCompatActivity {
 
     private RecyclerView recyclerView;
@@ -24,6 +22,28 @@ public class MainActivity extends AppCompatActivity {
 
     private android.widget.ImageView historyBtn;
 
+    // What the grid was last built from: the data version, and the timestamp of
+    // the first upcoming event (once that passes, the grid is out of date even
+    // if nothing was edited). Lets onResume skip reloading when nothing changed.
+    private long loadedVersion = -1;
+    private long loadedUntil = Long.MIN_VALUE;
+    // Reloads the grid the moment loadedUntil passes, while the app is in view
+    private com.example.clock.utils.CountdownClock.Subscription expirySubscription;
+
+    // Maintenance is re-run when the data changed, or at most hourly otherwise
+    private static final long MAINTENANCE_INTERVAL_MS = 60 * 60 * 1000L;
+    private long maintainedVersion = -1;
+    private long lastMaintenanceAt;
+
+    private final com.example.clock.utils.ThemeHelper.OnAccentColorChangedListener accentListener = this::applyTheme;
+
+    private final EventRepository.OnEventsChangedListener eventsChangedListener = (version, changedIds) -> {
+        // While paused, onResume picks the change up through the version check
+        if (getLifecycle().getCurrentState().isAtLeast(androidx.lifecycle.Lifecycle.State.RESUMED)) {
+            loadEvents();
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -32,7 +52,8 @@ public class MainActivity extends AppCompatActivity {
         com.example.clock.utils.NotificationScheduler.createNotificationChannel(this);
         checkPermissions();
 
-        repository = new EventRepository(this);
+        repository = EventRepository.getInstance(this);
+        repository.addOnEventsChangedListener(eventsChangedListener);
 
         recyclerView = findViewById(R.id.recycler_view_events);
         fab = findViewById(R.id.fab_add_event);
@@ -50,9 +71,8 @@ public class MainActivity extends AppCompatActivity {
         adapter.setOnEventClickListener(new EventAdapter.OnEventClickListener() {
             @Override
             public void onEventClick(Event event) {
-                Intent intent = new Intent(MainActivity.this, DetailActivity.class);
-                intent.putExtra("event", event);
-                startActivity(intent);
+                // Upcoming events are all in the repository; the id is enough
+                startActivity(DetailActivity.newIntent(MainActivity.this, event, false));
             }
         });
 
@@ -98,76 +118,96 @@ public class MainActivity extends AppCompatActivity {
             });
         }
 
-        performAppMaintenance();
+        applyTheme(com.example.clock.utils.ThemeHelper.getAccentColor(this));
+        com.example.clock.utils.ThemeHelper.addOnAccentColorChangedListener(accentListener);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Cards count down live while the grid can be seen
+        adapter.setTicking(true);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        adapter.setTicking(false);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        repository.removeOnEventsChangedListener(eventsChangedListener);
+        com.example.clock.utils.ThemeHelper.removeOnAccentColorChangedListener(accentListener);
+        cancelExpiry();
+    }
+
+    private static final class MaintenanceResult {
+        boolean notificationsMigrated;
     }
 
     private void performAppMaintenance() {
+        // Disk, alarm and calendar work all happen on the repository's I/O thread;
+        // only the UI updates come back here
+        repository.runWriteAsync(this, this::runMaintenance, result -> {
+            // Anything maintenance changed reaches the grid through eventsChangedListener
+            maintainedVersion = repository.getVersion();
+            lastMaintenanceAt = System.currentTimeMillis();
+            if (result.notificationsMigrated) {
+                android.widget.Toast
+                        .makeText(this, "Notifications updated for all events", android.widget.Toast.LENGTH_SHORT)
+                        .show();
+            }
+        });
+    }
+
+    private MaintenanceResult runMaintenance() {
+        MaintenanceResult result = new MaintenanceResult();
         android.content.SharedPreferences prefs = getPreferences(MODE_PRIVATE);
         boolean migrated = prefs.getBoolean("notifs_migrated_30_min_v2", false);
 
-        List<Event> allEvents = repository.getEvents();
         long now = System.currentTimeMillis();
+        // Move anything that has passed out of the upcoming partition, so the
+        // grid's reads stay small
+        repository.rollOver();
 
         // 1. Notification Migration (keep existing logic)
         if (!migrated) {
-            for (Event event : allEvents) {
-                if (event.getTimestamp() > now) {
-                    com.example.clock.utils.NotificationScheduler.scheduleNotification(this, event);
-                }
+            for (Event event : repository.getUpcoming(now, Integer.MAX_VALUE)) {
+                com.example.clock.utils.NotificationScheduler.scheduleNotification(this, event);
             }
             prefs.edit().putBoolean("notifs_migrated_30_min_v2", true).apply();
-            android.widget.Toast
-                    .makeText(this, "Notifications updated for all events", android.widget.Toast.LENGTH_SHORT).show();
+            result.notificationsMigrated = true;
         }
 
-        // 2. Cleanup old events (> 7 days old)
+        // 2. Archive old events (> 7 days old); history still pages through them
         // 7 days in ms = 7 * 24 * 60 * 60 * 1000 = 604800000
         long sevenDaysAgo = now - 604800000L;
-        // Optimization: check if we need to reload events after cleanup
-        int initialSize = allEvents.size();
-        repository.deleteEventsOlderThan(sevenDaysAgo);
-
-        // Reload if events might have been deleted to keep memory consistent
-        allEvents = repository.getEvents();
-        if (allEvents.size() != initialSize) {
-            adapter.setEvents(getFutureEvents(allEvents));
-        }
+        repository.archiveEventsOlderThan(sevenDaysAgo);
 
         // 3. Link existing events to Calendar if permission granted
         if (androidx.core.content.ContextCompat.checkSelfPermission(this,
                 android.Manifest.permission.READ_CALENDAR) == android.content.pm.PackageManager.PERMISSION_GRANTED) {
 
-            boolean eventsUpdated = false;
-            for (Event event : allEvents) {
-                // If event is in future (or recent) and has no ID, try to find it
-                if (event.getCalendarEventId() == null && event.getTimestamp() > sevenDaysAgo) {
+            // Collect every link in one batch: a single store write instead of one per event.
+            // Only upcoming events are linked: they are the in-memory partition, while
+            // reading the past ones would decode the whole past store on every run
+            EventRepository.Editor editor = repository.edit();
+            for (Event event : repository.getUpcoming(now, Integer.MAX_VALUE)) {
+                // If event is in future and has no ID, try to find it
+                if (event.getCalendarEventId() == null) {
                     long calId = com.example.clock.utils.CalendarUtils.getCalendarEventId(this, event);
                     if (calId != -1) {
-                        event.setCalendarEventId(calId);
-                        repository.addEvent(event); // Update repository
-                        eventsUpdated = true;
+                        Event linked = event.copy();
+                        linked.setCalendarEventId(calId);
+                        editor.upsert(linked);
                     }
                 }
             }
-            if (eventsUpdated) {
-                // Refresh list if needed, though addEvent mainly updates backing store
-                // Adapter already holds reference to objects? No, adapter has its own list.
-                // But we reloaded `allEvents` from repo.
-                // Better to just refresh adapter to be sure.
-                adapter.setEvents(getFutureEvents(repository.getEvents()));
-            }
+            editor.commit();
         }
-    }
-
-    private List<Event> getFutureEvents(List<Event> source) {
-        List<Event> future = new java.util.ArrayList<>();
-        long now = System.currentTimeMillis();
-        for (Event e : source) {
-            if (e.getTimestamp() > now) {
-                future.add(e);
-            }
-        }
-        return future;
+        return result;
     }
 
     private void checkPermissions() {
@@ -192,7 +232,8 @@ public class MainActivity extends AppCompatActivity {
         } else {
             // For older Android versions, just check Calendar permissions
             if (androidx.core.content.ContextCompat.checkSelfPermission(this,
-                    android.Manifest.permission.WRITE_CALENDAR) != android.content.pm.PackageManager.PERMISSION_GRANTED) {
+                    android.Manifest.permission.WRITE_CALENDAR)
+                    != android.content.pm.PackageManager.PERMISSION_GRANTED) {
                 requestPermissionLauncher.launch(new String[] { android.Manifest.permission.READ_CALENDAR,
                         android.Manifest.permission.WRITE_CALENDAR });
             }
@@ -213,15 +254,18 @@ public class MainActivity extends AppCompatActivity {
         dialog.setContentView(R.layout.dialog_donation);
         
         if (dialog.getWindow() != null) {
-            dialog.getWindow().setBackgroundDrawable(new android.graphics.drawable.ColorDrawable(android.graphics.Color.TRANSPARENT));
-            dialog.getWindow().setLayout((int)(getResources().getDisplayMetrics().widthPixels * 0.9), android.view.ViewGroup.LayoutParams.WRAP_CONTENT);
+            dialog.getWindow().setBackgroundDrawable(
+                    new android.graphics.drawable.ColorDrawable(android.graphics.Color.TRANSPARENT));
+            dialog.getWindow().setLayout((int) (getResources().getDisplayMetrics().widthPixels * 0.9),
+                    android.view.ViewGroup.LayoutParams.WRAP_CONTENT);
         }
 
         android.widget.Button supportButton = dialog.findViewById(R.id.button_support);
         supportButton.setOnClickListener(v -> {
             String paypalLink = "https://paypal.me/yulia2609"; 
             try {
-                android.content.Intent browserIntent = new android.content.Intent(android.content.Intent.ACTION_VIEW, android.net.Uri.parse(paypalLink));
+                android.content.Intent browserIntent = new android.content.Intent(
+                        android.content.Intent.ACTION_VIEW, android.net.Uri.parse(paypalLink));
                 startActivity(browserIntent);
             } catch (Exception e) {
                 e.printStackTrace();
@@ -232,8 +276,9 @@ public class MainActivity extends AppCompatActivity {
         dialog.show();
     }
 
-    private final androidx.activity.result.ActivityResultLauncher<String[]> requestPermissionLauncher = registerForActivityResult(
-            new androidx.activity.result.contract.ActivityResultContracts.RequestMultiplePermissions(), result -> {
+    private final androidx.activity.result.ActivityResultLauncher<String[]> requestPermissionLauncher =
+            registerForActivityResult(new androidx.activity.result.contract.ActivityResultContracts
+                    .RequestMultiplePermissions(), result -> {
                 Boolean postNotifsGranted = result.getOrDefault(android.Manifest.permission.POST_NOTIFICATIONS, false);
                 Boolean writeCalendarGranted = result.getOrDefault(android.Manifest.permission.WRITE_CALENDAR, false);
 
@@ -248,11 +293,12 @@ public class MainActivity extends AppCompatActivity {
         android.view.View dialogView = getLayoutInflater().inflate(R.layout.dialog_color_picker, null);
         com.example.clock.utils.ColorWheelView colorWheel = dialogView.findViewById(R.id.color_wheel);
 
-        final int originalColor = com.example.clock.utils.ThemeHelper.getAccentColor(this);
+        // Picked colors are only previewed; nothing is written until Apply
+        final Integer[] picked = { null };
         final boolean[] isApplied = { false };
 
-        final androidx.appcompat.app.AlertDialog dialog = new com.google.android.material.dialog.MaterialAlertDialogBuilder(
-                this)
+        final androidx.appcompat.app.AlertDialog dialog =
+                new com.google.android.material.dialog.MaterialAlertDialogBuilder(this)
                 .setTitle("Choose Accent Color")
                 .setView(dialogView)
                 .setNeutralButton("Default", new android.content.DialogInterface.OnClickListener() {
@@ -260,45 +306,49 @@ public class MainActivity extends AppCompatActivity {
                     public void onClick(android.content.DialogInterface dialog, int which) {
                         isApplied[0] = true;
                         com.example.clock.utils.ThemeHelper.resetToDefault(MainActivity.this);
-                        applyTheme();
-                        if (adapter != null)
-                            adapter.notifyDataSetChanged();
                     }
                 })
                 .setPositiveButton("Apply", new android.content.DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(android.content.DialogInterface dialog, int which) {
                         isApplied[0] = true;
+                        if (picked[0] != null) {
+                            com.example.clock.utils.ThemeHelper.saveAccentColor(MainActivity.this, picked[0]);
+                        } else {
+                            com.example.clock.utils.ThemeHelper.cancelAccentPreview(MainActivity.this);
+                        }
                     }
                 })
                 .setOnDismissListener(new android.content.DialogInterface.OnDismissListener() {
                     @Override
                     public void onDismiss(android.content.DialogInterface dialog) {
                         if (!isApplied[0]) {
-                            com.example.clock.utils.ThemeHelper.saveAccentColor(MainActivity.this, originalColor);
-                            applyTheme();
-                            if (adapter != null)
-                                adapter.notifyDataSetChanged();
+                            com.example.clock.utils.ThemeHelper.cancelAccentPreview(MainActivity.this);
                         }
                     }
                 })
                 .create();
 
+        // The listeners re-tint this screen and the cards on screen, at most
+        // once a frame while dragging
+        colorWheel.setOnColorPreviewListener(new com.example.clock.utils.ColorWheelView.OnColorPreviewListener() {
+            @Override
+            public void onColorPreview(int color) {
+                com.example.clock.utils.ThemeHelper.previewAccentColor(color);
+            }
+        });
         colorWheel.setOnColorSelectedListener(new com.example.clock.utils.ColorWheelView.OnColorSelectedListener() {
             @Override
             public void onColorSelected(int color) {
-                com.example.clock.utils.ThemeHelper.saveAccentColor(MainActivity.this, color);
-                applyTheme();
-                if (adapter != null)
-                    adapter.notifyDataSetChanged();
+                picked[0] = color;
+                com.example.clock.utils.ThemeHelper.previewAccentColor(color);
             }
         });
 
         dialog.show();
     }
 
-    private void applyTheme() {
-        int color = com.example.clock.utils.ThemeHelper.getAccentColor(this);
+    private void applyTheme(int color) {
         fab.setBackgroundTintList(android.content.res.ColorStateList.valueOf(color));
         fab.setColorFilter(android.graphics.Color.WHITE); // Ensure the + icon is white
 
@@ -327,40 +377,57 @@ public class MainActivity extends AppCompatActivity {
         }
 
         android.widget.Toast.makeText(this, "Syncing events...", android.widget.Toast.LENGTH_SHORT).show();
-        List<Event> allEvents = repository.getEvents();
-        long now = System.currentTimeMillis();
-        int count = 0;
-
-        for (Event event : allEvents) {
-            if (event.getTimestamp() > now) {
+        repository.runAsync(this, () -> {
+            int count = 0;
+            for (Event event : repository.getUpcoming(System.currentTimeMillis(), Integer.MAX_VALUE)) {
                 long eventId = com.example.clock.utils.CalendarUtils.addEventToCalendar(this, event);
                 if (eventId != -1)
                     count++;
             }
-        }
-
-        android.widget.Toast
-                .makeText(this, "Synced " + count + " events to Calendar", android.widget.Toast.LENGTH_SHORT).show();
+            return count;
+        }, count -> android.widget.Toast
+                .makeText(this, "Synced " + count + " events to Calendar", android.widget.Toast.LENGTH_SHORT).show());
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        applyTheme();
-        performAppMaintenance(); // Check for cleanup/linking on return
-        loadEvents();
+        long now = System.currentTimeMillis();
+        // Queue the grid first: both run on the same I/O thread, and the
+        // upcoming read shouldn't wait behind maintenance
+        if (repository.getVersion() != loadedVersion || now >= loadedUntil) {
+            loadEvents();
+        }
+        if (repository.getVersion() != maintainedVersion || now - lastMaintenanceAt >= MAINTENANCE_INTERVAL_MS) {
+            performAppMaintenance(); // Check for cleanup/linking on return
+        }
     }
 
     private void loadEvents() {
-        List<Event> allEvents = repository.getEvents();
-        List<Event> futureEvents = new java.util.ArrayList<>();
-        long now = System.currentTimeMillis();
-
-        for (Event e : allEvents) {
-            if (e.getTimestamp() > now) {
-                futureEvents.add(e);
+        // Read the version first: if a commit lands during the load we record the
+        // older one and simply load again next time
+        final long version = repository.getVersion();
+        // This load brings a new expiry
+        cancelExpiry();
+        repository.getUpcomingAsync(this, System.currentTimeMillis(), Integer.MAX_VALUE, events -> {
+            loadedVersion = version;
+            loadedUntil = events.isEmpty() ? Long.MAX_VALUE : events.get(0).getTimestamp();
+            adapter.setEvents(events);
+            cancelExpiry();
+            if (loadedUntil != Long.MAX_VALUE) {
+                expirySubscription = com.example.clock.utils.CountdownClock.getInstance(this)
+                        .subscribeAt(loadedUntil, now -> {
+                            expirySubscription = null;
+                            loadEvents();
+                        });
             }
+        });
+    }
+
+    private void cancelExpiry() {
+        if (expirySubscription != null) {
+            expirySubscription.cancel();
+            expirySubscription = null;
         }
-        adapter.setEvents(futureEvents);
     }
 }
@@ -1,26 +1,72 @@
 package com.example.clock.adapter;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.clock.R;
 import com.example.clock.model.Event;
+import com.example.clock.model.EventTable;
+import com.example.clock.utils.CountdownClock;
+import com.example.clock.utils.CountdownFormatter;
+import com.example.clock.utils.ThemeHelper;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
-import java.util.concurrent.TimeUnit;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class EventAdapter extends RecyclerView.Adapter<EventAdapter.EventViewHolder> {
 
-    private List<Event> events = new ArrayList<>();
+    // Rows are kept column-wise and bound through one flyweight cursor, so a
+    // long history list costs no Event object per row
+    private EventTable events = EventTable.empty();
+    private EventTable.Row cursor = events.row();
     private OnEventClickListener listener;
 
+    // New lists are diffed against the shown one off the main thread, and only
+    // the rows that were inserted, removed, moved or changed are dispatched.
+    // One thread for all adapters keeps each adapter's diffs in order.
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-diff");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Bumped by every setEvents; a diff finishing after a newer list came in is dropped
+    private int generation;
+
+    // Live countdowns: one subscription to the shared clock, due when the first
+    // row on screen changes its displayed minute (anchored at its own target,
+    // not the wall-clock minute). That row gets a payload rebind which only
+    // resets its countdown text, and the next change is looked up again.
+    private static final Object PAYLOAD_COUNTDOWN = new Object();
+    private static final long MINUTE_MS = 60 * 1000L;
+    private RecyclerView recyclerView;
+    private boolean ticking;
+    private CountdownClock.Subscription tick;
+    private long tickAt = Long.MAX_VALUE;
+
+    // Accent tint of the clock icons, read once on attach; a change re-tints
+    // the rows on screen through a payload rebind
+    private static final Object PAYLOAD_ACCENT = new Object();
+    private int accentColor = ThemeHelper.DEFAULT_COLOR;
+    private final ThemeHelper.OnAccentColorChangedListener accentListener = color -> {
+        accentColor = color;
+        notifyVisibleChanged(PAYLOAD_ACCENT);
+    };
+
+    public EventAdapter() {
+        setHasStableIds(true);
+    }
+
     public interface OnEventClickListener {
         void onEventClick(Event event);
     }
@@ -30,8 +76,228 @@ public class EventAdapter extends RecyclerView.Adapter<EventAdapter.EventViewHol
     }
 
     public void setEvents(List<Event> events) {
-        this.events = events;
-        notifyDataSetChanged();
+        setEvents(EventTable.of(events), null);
+    }
+
+    public void setEvents(EventTable events) {
+        setEvents(events, null);
+    }
+
+    /**
+     * Shows {@code newEvents} once it has been diffed against the current list.
+     * Call on the main thread; {@code onCommitted}, if given, runs there once the
+     * new list is in place (e.g. to look at {@link #getItemCount()}).
+     */
+    public void setEvents(EventTable newEvents, Runnable onCommitted) {
+        final int thisGeneration = ++generation;
+        final EventTable oldEvents = events;
+        if (oldEvents.size() == 0 || newEvents.size() == 0) {
+            // Nothing to match up
+            replace(newEvents);
+            if (oldEvents.size() > 0) {
+                notifyItemRangeRemoved(0, oldEvents.size());
+            }
+            if (newEvents.size() > 0) {
+                notifyItemRangeInserted(0, newEvents.size());
+            }
+            if (onCommitted != null) {
+                onCommitted.run();
+            }
+            return;
+        }
+        DIFF_EXECUTOR.execute(() -> {
+            // Both tables are immutable, so reading them here is safe
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new TableDiff(oldEvents, newEvents));
+            mainHandler.post(() -> {
+                if (thisGeneration != generation) {
+                    return;
+                }
+                replace(newEvents);
+                diff.dispatchUpdatesTo(EventAdapter.this);
+                if (onCommitted != null) {
+                    onCommitted.run();
+                }
+            });
+        });
+    }
+
+    private void replace(EventTable newEvents) {
+        events = newEvents;
+        cursor = newEvents.row();
+    }
+
+    /**
+     * Starts or stops the minute ticks. Only worth running while the list is
+     * visible, e.g. between onStart and onStop; starting also brings the rows
+     * on screen up to date at once.
+     */
+    public void setTicking(boolean enabled) {
+        if (enabled == ticking) {
+            return;
+        }
+        ticking = enabled;
+        cancelTick();
+        if (enabled) {
+            notifyVisibleChanged(PAYLOAD_COUNTDOWN);
+            scheduleVisibleTicks(System.currentTimeMillis());
+        }
+    }
+
+    private boolean isTicking() {
+        return ticking && recyclerView != null;
+    }
+
+    /**
+     * When a countdown to {@code timestamp} next shows something else: the
+     * floored minutes roll over just after each whole minute before it, and
+     * "Done" just after it. {@link Long#MAX_VALUE} once it is done.
+     */
+    private static long nextChange(long timestamp, long now) {
+        long left = timestamp + 1 - now;
+        if (left <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return timestamp + 1 - (left - 1) / MINUTE_MS * MINUTE_MS;
+    }
+
+    /** Moves the tick up to {@code time} if nothing is due before it. */
+    private void tickNoLaterThan(long time) {
+        if (time >= tickAt || !isTicking()) {
+            return;
+        }
+        cancelTick();
+        tickAt = time;
+        tick = CountdownClock.getInstance(recyclerView.getContext()).subscribeAt(time, this::onTick);
+    }
+
+    private void cancelTick() {
+        if (tick != null) {
+            tick.cancel();
+            tick = null;
+        }
+        tickAt = Long.MAX_VALUE;
+    }
+
+    private void onTick(long now) {
+        // One-shot: it has ended
+        tick = null;
+        tickAt = Long.MAX_VALUE;
+        if (recyclerView == null) {
+            return;
+        }
+        // Laid-out children are the rows on screen; the ones scrolled away
+        // are brought up to date when they come back
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            EventViewHolder holder = (EventViewHolder) recyclerView
+                    .getChildViewHolder(recyclerView.getChildAt(i));
+            int position = holder.getAdapterPosition();
+            if (holder.bound && holder.due <= now && position != RecyclerView.NO_POSITION) {
+                notifyItemChanged(position, PAYLOAD_COUNTDOWN);
+            }
+        }
+        scheduleVisibleTicks(now);
+    }
+
+    /** Schedules the tick for the first change among the rows on screen. */
+    private void scheduleVisibleTicks(long now) {
+        if (recyclerView == null) {
+            return;
+        }
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            int position = recyclerView.getChildAdapterPosition(recyclerView.getChildAt(i));
+            if (position != RecyclerView.NO_POSITION) {
+                tickNoLaterThan(nextChange(events.getTimestamp(position), now));
+            }
+        }
+    }
+
+    private void notifyVisibleChanged(Object payload) {
+        if (recyclerView == null) {
+            return;
+        }
+        // Laid-out children are the rows on screen; the ones scrolled away
+        // are rebound in full when they come back anyway
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            int position = recyclerView.getChildAdapterPosition(recyclerView.getChildAt(i));
+            if (position != RecyclerView.NO_POSITION) {
+                first = Math.min(first, position);
+                last = Math.max(last, position);
+            }
+        }
+        if (last >= 0) {
+            notifyItemRangeChanged(first, last - first + 1, payload);
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        accentColor = ThemeHelper.getAccentColor(recyclerView.getContext());
+        ThemeHelper.addOnAccentColorChangedListener(accentListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        cancelTick();
+        this.recyclerView = null;
+        ThemeHelper.removeOnAccentColorChangedListener(accentListener);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return stableId(events, position);
+    }
+
+    /** Derived from the event id, so a row keeps its id across reloads. */
+    private static long stableId(EventTable table, int row) {
+        long msb = table.getIdBits(row, true);
+        long lsb = table.getIdBits(row, false);
+        if (msb == 0 && lsb == 0) {
+            // Not a UUID
+            return table.getId(row).hashCode();
+        }
+        return msb ^ lsb;
+    }
+
+    /** Rows are the same event if their ids match, and unchanged if everything shown matches. */
+    private static final class TableDiff extends DiffUtil.Callback {
+        private final EventTable oldEvents;
+        private final EventTable newEvents;
+
+        TableDiff(EventTable oldEvents, EventTable newEvents) {
+            this.oldEvents = oldEvents;
+            this.newEvents = newEvents;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldEvents.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newEvents.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldRow, int newRow) {
+            if (oldEvents.getIdBits(oldRow, true) != newEvents.getIdBits(newRow, true)
+                    || oldEvents.getIdBits(oldRow, false) != newEvents.getIdBits(newRow, false)) {
+                return false;
+            }
+            // Equal bits are conclusive unless both are 0, the non-UUID marker
+            return oldEvents.getIdBits(oldRow, true) != 0 || oldEvents.getIdBits(oldRow, false) != 0
+                    || oldEvents.getId(oldRow).equals(newEvents.getId(newRow));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldRow, int newRow) {
+            return oldEvents.getTimestamp(oldRow) == newEvents.getTimestamp(newRow)
+                    && Objects.equals(oldEvents.getName(oldRow), newEvents.getName(newRow))
+                    && Objects.equals(oldEvents.getRecurrence(oldRow), newEvents.getRecurrence(newRow));
+        }
     }
 
     @NonNull
@@ -43,8 +309,55 @@ public class EventAdapter extends RecyclerView.Adapter<EventAdapter.EventViewHol
 
     @Override
     public void onBindViewHolder(@NonNull EventViewHolder holder, int position) {
-        Event event = events.get(position);
-        holder.bind(event, listener);
+        holder.bind(cursor.moveTo(position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull EventViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        boolean accent = false;
+        boolean countdown = false;
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_ACCENT) {
+                accent = true;
+            } else if (payload == PAYLOAD_COUNTDOWN) {
+                countdown = true;
+            } else {
+                // Something else changed too
+                onBindViewHolder(holder, position);
+                return;
+            }
+        }
+        if (accent) {
+            holder.bindAccent();
+        }
+        if (countdown) {
+            holder.bindCountdown(events.getTimestamp(position));
+        }
+    }
+
+    @Override
+    public void onViewAttachedToWindow(@NonNull EventViewHolder holder) {
+        // Rows coming back from the view cache aren't rebound: they missed any
+        // accent payload and countdown tick while they were off screen, and
+        // the tick doesn't know about them yet
+        holder.bindAccent();
+        if (!holder.bound) {
+            return;
+        }
+        if (holder.due <= System.currentTimeMillis()) {
+            holder.bindCountdown(holder.target);
+        } else {
+            tickNoLaterThan(holder.due);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull EventViewHolder holder) {
+        holder.bound = false;
     }
 
     @Override
@@ -52,47 +365,74 @@ public class EventAdapter extends RecyclerView.Adapter<EventAdapter.EventViewHol
         return events.size();
     }
 
-    static class EventViewHolder extends RecyclerView.ViewHolder {
+    class EventViewHolder extends RecyclerView.ViewHolder {
         private TextView nameText;
         private TextView countdownText;
         private android.widget.ImageView clockIcon;
+        // Owned by this holder's countdown view, which reads from its buffer
+        private final CountdownFormatter countdownFormatter = new CountdownFormatter();
+        // What the icon is tinted with, so a rebind with the same accent skips it
+        private int tint;
+        private boolean tinted;
+        // The countdown's target time, and when its text next changes
+        private long target;
+        private long due;
+        private boolean bound;
 
         public EventViewHolder(@NonNull View itemView) {
             super(itemView);
             nameText = itemView.findViewById(R.id.text_event_name);
             countdownText = itemView.findViewById(R.id.text_event_countdown);
             clockIcon = itemView.findViewById(R.id.image_clock);
+
+            // Set once per holder instead of per bind
+            itemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    // Rows aren't objects; materialize the clicked one
+                    int position = getAdapterPosition();
+                    if (listener != null && position != RecyclerView.NO_POSITION) {
+                        listener.onEventClick(events.toEvent(position));
+                    }
+                }
+            });
         }
 
-        public void bind(final Event event, final OnEventClickListener listener) {
-            // Apply Theme
-            int color = com.example.clock.utils.ThemeHelper.getAccentColor(itemView.getContext());
-            if (clockIcon != null) {
-                clockIcon.setColorFilter(color, android.graphics.PorterDuff.Mode.SRC_IN);
-            }
+        public void bind(EventTable.Row event) {
+            bindAccent();
+
+            // Mark repeating events; the row shows their next occurrence
+            nameText.setText(event.isRecurring() ? "\u21BB " + event.getName() : event.getName());
 
-            nameText.setText(event.getName());
+            bindCountdown(event.getTimestamp());
+        }
 
-            long diff = event.getTimestamp() - System.currentTimeMillis();
+        /** Tints the clock icon with the adapter's current accent. */
+        void bindAccent() {
+            if (clockIcon == null || (tinted && tint == accentColor)) {
+                return;
+            }
+            clockIcon.setColorFilter(accentColor, android.graphics.PorterDuff.Mode.SRC_IN);
+            tint = accentColor;
+            tinted = true;
+        }
+
+        /**
+         * Only the countdown text; all a minute tick needs to touch. Also makes
+         * sure the adapter's tick comes by the time this text next changes.
+         */
+        void bindCountdown(long timestamp) {
+            long now = System.currentTimeMillis();
+            long diff = timestamp - now;
             if (diff < 0) {
                 countdownText.setText("Done");
             } else {
-                long days = TimeUnit.MILLISECONDS.toDays(diff);
-                long hours = TimeUnit.MILLISECONDS.toHours(diff) % 24;
-                long minutes = TimeUnit.MILLISECONDS.toMinutes(diff) % 60;
-
-                String timeString = String.format(Locale.getDefault(), "%02dd %02dh %02dm", days, hours, minutes);
-                countdownText.setText(timeString);
+                countdownFormatter.daysHoursMinutes(diff).applyTo(countdownText);
             }
-
-            itemView.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    if (listener != null) {
-                        listener.onEventClick(event);
-                    }
-                }
-            });
+            target = timestamp;
+            due = nextChange(timestamp, now);
+            bound = true;
+            tickNoLaterThan(due);
         }
     }
 }
@@ -0,0 +1,441 @@
+package com.example.clock.data;
+
+import android.util.Log;
+
+import com.example.clock.model.Event;
+import com.example.clock.model.EventIds;
+import com.example.clock.model.Recurrence;
+import com.example.clock.model.StringPool;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary snapshot, read through a memory-mapped buffer.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header  32 bytes  magic, version, flags, count, poolOffset, poolLength, reserved
+ * records 48 bytes  timestamp, calendarEventId, idMsb, idLsb, flags, nameRef, placeRef, recurrenceRef
+ * pool             length-prefixed UTF-8 strings, referenced by byte offset (-1 = null)
+ * </pre>
+ *
+ * Records are written sorted by timestamp, so loading and range reads only walk
+ * the fixed-width columns. Ids that are UUIDs (all ids the app generates) are
+ * stored as two longs; anything else goes to the pool with {@link #FLAG_ID_IN_POOL}.
+ * Names and places are decoded lazily through {@link MappedEvent}. Like every
+ * pool ref, the recurrence ref is -1 for a one-off event.
+ *
+ * Lookups by id go through an index of the id columns, sorted once per mapping
+ * the first time one is needed; only the matching row is materialized.
+ *
+ * Every write replaces the whole file (written aside, then renamed), so rows
+ * handed out earlier keep reading from the old mapping.
+ */
+class BinaryEventStore implements EventStore {
+    private static final String TAG = "BinaryEventStore";
+
+    private static final int MAGIC = 0x434C4B42; // "CLKB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SORTED = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 48;
+
+    private static final int OFF_TIMESTAMP = 0;
+    private static final int OFF_CALENDAR_ID = 8;
+    private static final int OFF_ID_MSB = 16;
+    private static final int OFF_ID_LSB = 24;
+    private static final int OFF_FLAGS = 32;
+    private static final int OFF_NAME = 36;
+    private static final int OFF_PLACE = 40;
+    private static final int OFF_RECURRENCE = 44;
+
+    private static final int FLAG_TEMPORARY = 1;
+    private static final int FLAG_HAS_CALENDAR_ID = 1 << 1;
+    private static final int FLAG_ID_IN_POOL = 1 << 2;
+
+    private final File file;
+    private final EventStore legacy;
+    private MappedByteBuffer buffer;
+    // Reads the current mapping's pool; shared by every row handed out from it
+    private StringPool pool;
+    private int count;
+    private boolean sorted;
+    // Built by the first find() after each map(): UUID rows sorted by id bits,
+    // and the rare other ids by value
+    private long[] indexMsb;
+    private long[] indexLsb;
+    private int[] indexRows;
+    private Map<String, Integer> otherIdRows;
+
+    /**
+     * @param legacy store to import from when {@link #open()} finds no binary
+     *               file yet.
+     */
+    BinaryEventStore(File file, EventStore legacy) {
+        this.file = file;
+        this.legacy = legacy;
+    }
+
+    @Override
+    public synchronized void open() {
+        if (!file.exists()) {
+            List<Event> events = legacy.loadAll();
+            try {
+                writeFile(events);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not create " + file, e);
+            }
+        }
+        map();
+    }
+
+    @Override
+    public synchronized List<Event> loadAll() {
+        List<Event> events = materialize(0, count);
+        if (!sorted) {
+            Collections.sort(events);
+        }
+        return events;
+    }
+
+    @Override
+    public boolean hasIndexedFind() {
+        return true;
+    }
+
+    @Override
+    public synchronized Event find(String id) {
+        if (indexRows == null) {
+            buildIndex();
+        }
+        UUID uuid = EventIds.parseUuid(id);
+        if (uuid == null) {
+            Integer row = otherIdRows.get(id);
+            return row != null ? row(row) : null;
+        }
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int lo = 0;
+        int hi = indexRows.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareIds(indexMsb[mid], indexLsb[mid], msb, lsb);
+            if (cmp == 0) {
+                return row(indexRows[mid]);
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return null;
+    }
+
+    /** Reads the id columns once; no names, places or other strings are decoded. */
+    private void buildIndex() {
+        List<Integer> uuidRows = new ArrayList<>(count);
+        Map<String, Integer> others = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int base = HEADER_SIZE + i * RECORD_SIZE;
+            if ((buffer.getInt(base + OFF_FLAGS) & FLAG_ID_IN_POOL) != 0) {
+                others.put(readString(buffer, (int) buffer.getLong(base + OFF_ID_MSB)), i);
+            } else {
+                uuidRows.add(i);
+            }
+        }
+        Collections.sort(uuidRows, (a, b) -> compareIds(idMsbAt(a), idLsbAt(a), idMsbAt(b), idLsbAt(b)));
+        long[] msb = new long[uuidRows.size()];
+        long[] lsb = new long[uuidRows.size()];
+        int[] rows = new int[uuidRows.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = uuidRows.get(i);
+            msb[i] = idMsbAt(rows[i]);
+            lsb[i] = idLsbAt(rows[i]);
+        }
+        indexMsb = msb;
+        indexLsb = lsb;
+        indexRows = rows;
+        otherIdRows = others;
+    }
+
+    private long idMsbAt(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + OFF_ID_MSB);
+    }
+
+    private long idLsbAt(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + OFF_ID_LSB);
+    }
+
+    private static int compareIds(long msbA, long lsbA, long msbB, long lsbB) {
+        int byMsb = Long.compare(msbA, msbB);
+        return byMsb != 0 ? byMsb : Long.compare(lsbA, lsbB);
+    }
+
+    @Override
+    public synchronized List<Event> loadBetween(long from, long to) {
+        if (!sorted) {
+            return EventRanges.between(loadAll(), from, to);
+        }
+        int start = lowerBound(from);
+        return materialize(start, Math.max(start, lowerBound(to)));
+    }
+
+    @Override
+    public synchronized List<Event> loadUpcoming(long now, int limit) {
+        if (!sorted) {
+            return EventRanges.upcoming(loadAll(), now, limit);
+        }
+        int start = upperBound(now);
+        return materialize(start, (int) Math.min(count, (long) start + limit));
+    }
+
+    @Override
+    public synchronized List<Event> loadPast(long now, int offset, int limit) {
+        if (!sorted) {
+            return EventRanges.past(loadAll(), now, offset, limit);
+        }
+        List<Event> page = new ArrayList<>();
+        for (int i = upperBound(now) - 1 - offset; i >= 0 && page.size() < limit; i--) {
+            page.add(row(i));
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized void write(List<EventMutation> changes, List<Event> snapshot) {
+        try {
+            writeFile(snapshot);
+            map();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + file, e);
+        }
+    }
+
+    private List<Event> materialize(int from, int to) {
+        List<Event> events = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            events.add(row(i));
+        }
+        return events;
+    }
+
+    private Event row(int index) {
+        int base = HEADER_SIZE + index * RECORD_SIZE;
+        int flags = buffer.getInt(base + OFF_FLAGS);
+        String id;
+        if ((flags & FLAG_ID_IN_POOL) != 0) {
+            id = readString(buffer, (int) buffer.getLong(base + OFF_ID_MSB));
+        } else {
+            id = new UUID(buffer.getLong(base + OFF_ID_MSB), buffer.getLong(base + OFF_ID_LSB)).toString();
+        }
+        MappedEvent event = new MappedEvent(id, buffer.getLong(base + OFF_TIMESTAMP), pool,
+                buffer.getInt(base + OFF_NAME), buffer.getInt(base + OFF_PLACE));
+        if ((flags & FLAG_HAS_CALENDAR_ID) != 0) {
+            event.setCalendarEventId(buffer.getLong(base + OFF_CALENDAR_ID));
+        }
+        event.setTemporary((flags & FLAG_TEMPORARY) != 0);
+        int recurrenceRef = buffer.getInt(base + OFF_RECURRENCE);
+        if (recurrenceRef >= 0) {
+            event.setRecurrence(Recurrence.decode(readString(buffer, recurrenceRef)));
+        }
+        return event;
+    }
+
+    private long timestampAt(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + OFF_TIMESTAMP);
+    }
+
+    private int lowerBound(long timestamp) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestampAt(mid) < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int upperBound(long timestamp) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestampAt(mid) <= timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static String readString(ByteBuffer file, int ref) {
+        if (ref < 0) {
+            return null;
+        }
+        int length = file.getInt(ref);
+        byte[] bytes = new byte[length];
+        ByteBuffer view = file.duplicate();
+        view.position(ref + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void map() {
+        buffer = null;
+        pool = null;
+        count = 0;
+        sorted = true;
+        indexRows = null;
+        otherIdRows = null;
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                Log.e(TAG, "Unrecognised event file " + file);
+                return;
+            }
+            int records = mapped.getInt(12);
+            long poolOffset = mapped.getInt(16);
+            long poolLength = mapped.getInt(20);
+            // A file cut short (or not ours) must not send reads past the end
+            if (records < 0 || poolOffset != HEADER_SIZE + (long) records * RECORD_SIZE || poolLength < 0
+                    || poolOffset + poolLength > mapped.capacity()) {
+                Log.e(TAG, "Truncated or damaged event file " + file + ", reading it as empty");
+                return;
+            }
+            buffer = mapped;
+            pool = ref -> readString(mapped, ref);
+            sorted = (mapped.getInt(8) & HEADER_SORTED) != 0;
+            count = records;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not map " + file, e);
+        }
+    }
+
+    private void writeFile(List<Event> ordered) throws IOException {
+        // Callers pass the list in timestamp order; the header only promises it if true
+        boolean sortedInput = EventRanges.isSorted(ordered);
+
+        // Lay out the pool first so records can point into it
+        PoolWriter pool = new PoolWriter();
+        int[] nameRefs = new int[ordered.size()];
+        int[] placeRefs = new int[ordered.size()];
+        int[] recurrenceRefs = new int[ordered.size()];
+        int[] idRefs = new int[ordered.size()];
+        long[] idMsb = new long[ordered.size()];
+        long[] idLsb = new long[ordered.size()];
+        int poolOffset = HEADER_SIZE + ordered.size() * RECORD_SIZE;
+        for (int i = 0; i < ordered.size(); i++) {
+            Event event = ordered.get(i);
+            idRefs[i] = -1;
+            UUID uuid = EventIds.parseUuid(event.getId());
+            if (uuid != null) {
+                idMsb[i] = uuid.getMostSignificantBits();
+                idLsb[i] = uuid.getLeastSignificantBits();
+            } else {
+                idRefs[i] = pool.add(event.getId(), poolOffset);
+            }
+            nameRefs[i] = pool.add(event.getName(), poolOffset);
+            placeRefs[i] = pool.add(event.getPlace(), poolOffset);
+            Recurrence recurrence = event.getRecurrence();
+            recurrenceRefs[i] = pool.add(recurrence != null ? recurrence.encode() : null, poolOffset);
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sortedInput ? HEADER_SORTED : 0);
+            out.writeInt(ordered.size());
+            out.writeInt(poolOffset);
+            out.writeInt(pool.size());
+            out.writeLong(0);
+            for (int i = 0; i < ordered.size(); i++) {
+                Event event = ordered.get(i);
+                int flags = 0;
+                if (event.isTemporary()) {
+                    flags |= FLAG_TEMPORARY;
+                }
+                if (event.getCalendarEventId() != null) {
+                    flags |= FLAG_HAS_CALENDAR_ID;
+                }
+                if (idRefs[i] >= 0) {
+                    flags |= FLAG_ID_IN_POOL;
+                }
+                out.writeLong(event.getTimestamp());
+                out.writeLong(event.getCalendarEventId() != null ? event.getCalendarEventId() : 0);
+                out.writeLong(idRefs[i] >= 0 ? idRefs[i] : idMsb[i]);
+                out.writeLong(idLsb[i]);
+                out.writeInt(flags);
+                out.writeInt(nameRefs[i]);
+                out.writeInt(placeRefs[i]);
+                out.writeInt(recurrenceRefs[i]);
+            }
+            pool.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /** Collects pool strings, sharing repeated values (places especially). */
+    private static final class PoolWriter {
+        private final List<byte[]> entries = new ArrayList<>();
+        private final Map<String, Integer> offsets = new HashMap<>();
+        private int size;
+
+        int add(String value, int poolOffset) {
+            if (value == null) {
+                return -1;
+            }
+            Integer existing = offsets.get(value);
+            if (existing != null) {
+                return existing;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int ref = poolOffset + size;
+            entries.add(bytes);
+            offsets.put(value, ref);
+            size += 4 + bytes.length;
+            return ref;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (byte[] bytes : entries) {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+}
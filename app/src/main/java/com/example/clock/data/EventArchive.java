@@ -0,0 +1,339 @@
+package com.example.clock.data;
+
+import android.util.Log;
+
+import com.example.clock.model.Event;
+import com.example.clock.model.Recurrence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Long-term history: events that aged out of the live store, kept in
+ * append-only compressed chunks, one file per calendar month (UTC) of the
+ * event's timestamp. Nothing here is read unless history asks for that month.
+ *
+ * A month file is a sequence of frames, one per appended batch:
+ * <pre>
+ * length int, crc32 int (of the member), then one gzip member holding:
+ *   magic int, count int, then per record:
+ *     timestamp   zigzag varint delta from the previous record (the first is absolute)
+ *     flags       byte
+ *     id          length-prefixed UTF-8
+ *     name, place length-prefixed UTF-8, only if the matching flag is set
+ *     calendarEventId long, only if the flag is set
+ *     recurrence  length-prefixed UTF-8 ({@link Recurrence#encode()}), only if the flag is set
+ * </pre>
+ * Batches are written in timestamp order so deltas stay small. An archived
+ * event archived again (the live delete didn't reach disk before the process
+ * died) reads back once: later records win.
+ *
+ * An append only writes its own frame, syncs it and reads it back. The length
+ * prefix lets a reader step over a damaged frame to the ones after it. A frame
+ * cut short by a crash can only be the last one; the next append cuts it off
+ * first. Its events were never deleted from the live store, so they are
+ * simply archived again.
+ */
+final class EventArchive {
+    private static final String TAG = "EventArchive";
+
+    private static final int MAGIC = 0x434C4B41; // "CLKA"
+    private static final String SUFFIX = ".arc";
+    private static final int FRAME_HEADER = 8;
+
+    private static final int FLAG_TEMPORARY = 1;
+    private static final int FLAG_HAS_NAME = 1 << 1;
+    private static final int FLAG_HAS_PLACE = 1 << 2;
+    private static final int FLAG_HAS_CALENDAR_ID = 1 << 3;
+    private static final int FLAG_HAS_RECURRENCE = 1 << 4;
+
+    private final File directory;
+
+    EventArchive(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Appends events, given in timestamp order, to their month chunks and syncs
+     * them. Returns only once every batch has been read back from disk; the
+     * caller may then drop its own copies.
+     */
+    synchronized void append(List<Event> events) throws IOException {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        int start = 0;
+        String month = monthOf(events.get(0).getTimestamp());
+        for (int i = 1; i <= events.size(); i++) {
+            String next = i < events.size() ? monthOf(events.get(i).getTimestamp()) : null;
+            if (!month.equals(next)) {
+                appendBatch(new File(directory, month + SUFFIX), events.subList(start, i));
+                start = i;
+                month = next;
+            }
+        }
+    }
+
+    /** Months that have archived events, newest first, as "yyyy-MM". */
+    synchronized List<String> months() {
+        List<String> months = new ArrayList<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(SUFFIX)) {
+                    months.add(name.substring(0, name.length() - SUFFIX.length()));
+                }
+            }
+        }
+        // Zero-padded, so string order is date order
+        Collections.sort(months, Collections.reverseOrder());
+        return months;
+    }
+
+    /** Every event archived for the month, newest first. */
+    synchronized List<Event> load(String month) {
+        List<Event> events = readAll(new File(directory, month + SUFFIX));
+        Collections.reverse(events);
+        return events;
+    }
+
+    /** The file's events, oldest first, skipping any frame that doesn't read back. */
+    private static List<Event> readAll(File file) {
+        Map<String, Event> byId = new LinkedHashMap<>();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                long remaining = file.length();
+                while (remaining >= FRAME_HEADER) {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    remaining -= FRAME_HEADER;
+                    if (length < 0 || length > remaining) {
+                        Log.w(TAG, "Torn last batch in " + file);
+                        break;
+                    }
+                    byte[] member = new byte[length];
+                    in.readFully(member);
+                    remaining -= length;
+                    try {
+                        for (Event event : decodeBatch(member, checksum)) {
+                            byId.remove(event.getId());
+                            byId.put(event.getId(), event);
+                        }
+                    } catch (IOException e) {
+                        Log.w(TAG, "Skipping a damaged batch in " + file, e);
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read all of " + file, e);
+            }
+        }
+        List<Event> events = new ArrayList<>(byId.values());
+        // Batches are each in order but may overlap (late additions to the past)
+        if (!EventRanges.isSorted(events)) {
+            Collections.sort(events);
+        }
+        return events;
+    }
+
+    private static void appendBatch(File file, List<Event> batch) throws IOException {
+        byte[] member = encodeBatch(batch);
+        CRC32 crc = new CRC32();
+        crc.update(member);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = wholeFramesLength(raf);
+            raf.setLength(end);
+            raf.seek(end);
+            raf.writeInt(member.length);
+            raf.writeInt((int) crc.getValue());
+            raf.write(member);
+            raf.getFD().sync();
+
+            // Check what is on disk, not what was meant to be written
+            raf.seek(end);
+            int length = raf.readInt();
+            int checksum = raf.readInt();
+            if (length != member.length) {
+                throw new IOException("Batch did not read back from " + file);
+            }
+            byte[] written = new byte[length];
+            raf.readFully(written);
+            List<Event> read = decodeBatch(written, checksum);
+            if (read.size() != batch.size()) {
+                throw new IOException("Batch did not read back from " + file);
+            }
+            for (int i = 0; i < read.size(); i++) {
+                if (!read.get(i).getId().equals(batch.get(i).getId())
+                        || read.get(i).getTimestamp() != batch.get(i).getTimestamp()) {
+                    throw new IOException("Batch did not read back from " + file);
+                }
+            }
+        }
+    }
+
+    /** Where the last complete frame ends; only the frame headers are read. */
+    private static long wholeFramesLength(RandomAccessFile raf) throws IOException {
+        long size = raf.length();
+        long position = 0;
+        while (position + FRAME_HEADER <= size) {
+            raf.seek(position);
+            int length = raf.readInt();
+            if (length < 0 || position + FRAME_HEADER + length > size) {
+                break;
+            }
+            position += FRAME_HEADER + length;
+        }
+        return position;
+    }
+
+    /** One gzip member holding {@code batch}. */
+    private static byte[] encodeBatch(List<Event> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+        out.writeInt(MAGIC);
+        out.writeInt(batch.size());
+        long previous = 0;
+        for (Event event : batch) {
+            writeVarLong(out, event.getTimestamp() - previous);
+            previous = event.getTimestamp();
+            int flags = 0;
+            if (event.isTemporary()) {
+                flags |= FLAG_TEMPORARY;
+            }
+            if (event.getName() != null) {
+                flags |= FLAG_HAS_NAME;
+            }
+            if (event.getPlace() != null) {
+                flags |= FLAG_HAS_PLACE;
+            }
+            if (event.getCalendarEventId() != null) {
+                flags |= FLAG_HAS_CALENDAR_ID;
+            }
+            if (event.getRecurrence() != null) {
+                flags |= FLAG_HAS_RECURRENCE;
+            }
+            out.writeByte(flags);
+            writeString(out, event.getId());
+            if (event.getName() != null) {
+                writeString(out, event.getName());
+            }
+            if (event.getPlace() != null) {
+                writeString(out, event.getPlace());
+            }
+            if (event.getCalendarEventId() != null) {
+                out.writeLong(event.getCalendarEventId());
+            }
+            if (event.getRecurrence() != null) {
+                writeString(out, event.getRecurrence().encode());
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** The whole batch in {@code member}, or an IOException; never part of it. */
+    private static List<Event> decodeBatch(byte[] member, int checksum) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(member);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Checksum mismatch");
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new ByteArrayInputStream(member))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Bad archive batch");
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Bad archive batch");
+            }
+            List<Event> events = new ArrayList<>();
+            long timestamp = 0;
+            for (int i = 0; i < count; i++) {
+                timestamp += readVarLong(in);
+                int flags = in.readByte();
+                String id = readString(in);
+                String name = (flags & FLAG_HAS_NAME) != 0 ? readString(in) : null;
+                String place = (flags & FLAG_HAS_PLACE) != 0 ? readString(in) : null;
+                Event event = new Event(id, name, place, timestamp);
+                if ((flags & FLAG_HAS_CALENDAR_ID) != 0) {
+                    event.setCalendarEventId(in.readLong());
+                }
+                event.setTemporary((flags & FLAG_TEMPORARY) != 0);
+                if ((flags & FLAG_HAS_RECURRENCE) != 0) {
+                    event.setRecurrence(Recurrence.decode(readString(in)));
+                }
+                events.add(event);
+            }
+            return events;
+        }
+    }
+
+    // Length-prefixed UTF-8: unlike writeUTF, no 64KB limit on a long name or place
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String monthOf(long timestamp) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+        calendar.setTimeInMillis(timestamp);
+        return String.format(Locale.US, "%04d-%02d", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1);
+    }
+}
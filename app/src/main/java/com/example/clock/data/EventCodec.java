@@ -0,0 +1,196 @@
+package com.example.clock.data;
+
+import com.example.clock.model.Event;
+import com.example.clock.model.Recurrence;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written JSON encoding for {@link Event}, replacing reflective Gson.
+ *
+ * Produces and accepts the same JSON Gson generated from the Event fields
+ * (field names, omitted nulls, HTML-safe escaping), so data written by older
+ * versions keeps loading and the output is byte-for-byte what was stored before.
+ * Stateless and safe to share between threads.
+ */
+public final class EventCodec {
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_NAME = "name";
+    private static final String FIELD_PLACE = "place";
+    private static final String FIELD_TIMESTAMP = "timestamp";
+    private static final String FIELD_CALENDAR_EVENT_ID = "calendarEventId";
+    // Gson used the raw field name, not the bean property
+    private static final String FIELD_TEMPORARY = "isTemporary";
+    // Recurrence.encode() form; absent for one-off events, so their JSON is unchanged
+    private static final String FIELD_RECURRENCE = "recurrence";
+
+    // Rough size of one encoded event, to avoid regrowing the buffer
+    private static final int ESTIMATED_EVENT_LENGTH = 160;
+
+    private EventCodec() {
+    }
+
+    public static String encode(Event event) {
+        StringWriter out = new StringWriter(ESTIMATED_EVENT_LENGTH);
+        try {
+            JsonWriter writer = newWriter(out);
+            write(writer, event);
+            writer.flush();
+        } catch (IOException e) {
+            // StringWriter doesn't throw
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    public static String encodeList(List<Event> events) {
+        StringWriter out = new StringWriter(2 + events.size() * ESTIMATED_EVENT_LENGTH);
+        try {
+            JsonWriter writer = newWriter(out);
+            writer.beginArray();
+            for (int i = 0, n = events.size(); i < n; i++) {
+                write(writer, events.get(i));
+            }
+            writer.endArray();
+            writer.flush();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    /** Returns null for a null/blank string or malformed JSON, like the old fromJson path. */
+    public static Event decode(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonReader reader = newReader(json);
+            if (reader.peek() == JsonToken.NULL) {
+                return null;
+            }
+            return read(reader);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Returns an empty list for a null string or a JSON null. */
+    public static List<Event> decodeList(String json) throws IOException {
+        List<Event> events = new ArrayList<>();
+        if (json == null || json.isEmpty()) {
+            return events;
+        }
+        JsonReader reader = newReader(json);
+        if (reader.peek() == JsonToken.NULL) {
+            return events;
+        }
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                events.add(read(reader));
+            }
+            reader.endArray();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed event list", e);
+        }
+        return events;
+    }
+
+    public static void write(JsonWriter writer, Event event) throws IOException {
+        writer.beginObject();
+        if (event.getId() != null) {
+            writer.name(FIELD_ID).value(event.getId());
+        }
+        if (event.getName() != null) {
+            writer.name(FIELD_NAME).value(event.getName());
+        }
+        if (event.getPlace() != null) {
+            writer.name(FIELD_PLACE).value(event.getPlace());
+        }
+        writer.name(FIELD_TIMESTAMP).value(event.getTimestamp());
+        if (event.getCalendarEventId() != null) {
+            writer.name(FIELD_CALENDAR_EVENT_ID).value(event.getCalendarEventId().longValue());
+        }
+        writer.name(FIELD_TEMPORARY).value(event.isTemporary());
+        if (event.getRecurrence() != null) {
+            writer.name(FIELD_RECURRENCE).value(event.getRecurrence().encode());
+        }
+        writer.endObject();
+    }
+
+    public static Event read(JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        String place = null;
+        long timestamp = 0;
+        Long calendarEventId = null;
+        boolean temporary = false;
+        Recurrence recurrence = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case FIELD_ID:
+                    id = reader.nextString();
+                    break;
+                case FIELD_NAME:
+                    name = reader.nextString();
+                    break;
+                case FIELD_PLACE:
+                    place = reader.nextString();
+                    break;
+                case FIELD_TIMESTAMP:
+                    timestamp = reader.nextLong();
+                    break;
+                case FIELD_CALENDAR_EVENT_ID:
+                    calendarEventId = reader.nextLong();
+                    break;
+                case FIELD_TEMPORARY:
+                    temporary = reader.nextBoolean();
+                    break;
+                case FIELD_RECURRENCE:
+                    recurrence = Recurrence.decode(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        Event event = new Event(id, name, place, timestamp);
+        event.setCalendarEventId(calendarEventId);
+        event.setTemporary(temporary);
+        event.setRecurrence(recurrence);
+        return event;
+    }
+
+    static JsonWriter newWriter(StringWriter out) {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setHtmlSafe(true);
+        return writer;
+    }
+
+    static JsonReader newReader(String json) {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        return reader;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.clock.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+class EventDatabase extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "clock_events.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final String TABLE_EVENTS = "events";
+    // Same columns; holds events that have passed (see EventRepository)
+    static final String TABLE_PAST_EVENTS = "events_past";
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_NAME = "name";
+    static final String COLUMN_PLACE = "place";
+    static final String COLUMN_TIMESTAMP = "timestamp";
+    static final String COLUMN_CALENDAR_EVENT_ID = "calendar_event_id";
+    static final String COLUMN_TEMPORARY = "temporary";
+    static final String COLUMN_RECURRENCE = "recurrence";
+
+    // Event tables whose pre-SQLite data has been copied in. Written in the
+    // same transaction as the copy, so an import interrupted by the process
+    // dying is simply done again on the next open.
+    private static final String TABLE_IMPORTS = "imports";
+    private static final String COLUMN_TABLE = "table_name";
+
+    EventDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        createTable(db, TABLE_EVENTS);
+        createTable(db, TABLE_PAST_EVENTS);
+        createImportsTable(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one version so far
+    }
+
+    private void createTable(SQLiteDatabase db, String table) {
+        db.execSQL("CREATE TABLE " + table + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY NOT NULL, "
+                + COLUMN_NAME + " TEXT, "
+                + COLUMN_PLACE + " TEXT, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + COLUMN_CALENDAR_EVENT_ID + " INTEGER, "
+                + COLUMN_TEMPORARY + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_RECURRENCE + " TEXT)");
+        // Every screen reads a timestamp range; id breaks ties so paging is stable
+        db.execSQL("CREATE INDEX idx_" + table + "_timestamp_id ON " + table
+                + " (" + COLUMN_TIMESTAMP + ", " + COLUMN_ID + ")");
+    }
+
+    private static void createImportsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_IMPORTS + " (" + COLUMN_TABLE + " TEXT PRIMARY KEY NOT NULL)");
+    }
+
+    /** True once the table's pre-SQLite data has been copied in. */
+    static boolean isImported(SQLiteDatabase db, String table) {
+        return DatabaseUtils.queryNumEntries(db, TABLE_IMPORTS, COLUMN_TABLE + " = ?", new String[] { table }) > 0;
+    }
+
+    /** Call inside the transaction that does the import. */
+    static void markImported(SQLiteDatabase db, String table) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TABLE, table);
+        db.insertWithOnConflict(TABLE_IMPORTS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.clock.data;
+
+import com.example.clock.model.Event;
+
+/** One queued change, as recorded by {@link EventRepository.Editor}. */
+final class EventMutation {
+    static final int UPSERT = 0;
+    static final int DELETE = 1;
+    static final int DELETE_OLDER_THAN = 2;
+
+    final int type;
+    final Event event;
+    final String id;
+    final long timestamp;
+
+    private EventMutation(int type, Event event, String id, long timestamp) {
+        this.type = type;
+        this.event = event;
+        this.id = id;
+        this.timestamp = timestamp;
+    }
+
+    static EventMutation upsert(Event event) {
+        return new EventMutation(UPSERT, event, event.getId(), 0);
+    }
+
+    static EventMutation delete(String id) {
+        return new EventMutation(DELETE, null, id, 0);
+    }
+
+    static EventMutation deleteOlderThan(long timestamp) {
+        return new EventMutation(DELETE_OLDER_THAN, null, null, timestamp);
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.clock.data;
+
+import com.example.clock.model.Event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * One time slice of the events (upcoming or past) with its own store, cache and
+ * queue of unwritten changes. {@link EventRepository} owns one of each and routes
+ * every change to the slice the event belongs in.
+ *
+ * Not thread-safe: the repository calls everything except {@link Batch#write()}
+ * and {@link #peek(String)} while holding its own lock.
+ */
+final class EventPartition {
+    private final Supplier<EventStore> opener;
+    // Opened on first use so building a partition never touches disk
+    private EventStore store;
+
+    // Decoded, sorted copy of this partition. Loaded on first use and kept in
+    // step by apply(), which keeps it in timestamp order (id order among equal
+    // timestamps, as the stores use) by binary-search placement; nothing
+    // re-sorts it. Published only once the index is filled,
+    // so peek() can read both without the repository lock.
+    private volatile List<Event> cache;
+    // id -> cached event, kept in step with the list
+    private final Map<String, Event> index = new ConcurrentHashMap<>();
+
+    private final PendingWrites pendingWrites = new PendingWrites();
+
+    EventPartition(Supplier<EventStore> opener) {
+        this.opener = opener;
+    }
+
+    EventStore store() {
+        if (store == null) {
+            EventStore opened = opener.get();
+            opened.open();
+            store = opened;
+        }
+        return store;
+    }
+
+    /** The cached list, loading it if needed. Callers must not modify it. */
+    List<Event> events() {
+        if (cache == null) {
+            List<Event> loaded = store().loadAll();
+            for (Event event : loaded) {
+                index.put(event.getId(), event);
+            }
+            cache = loaded;
+        }
+        return cache;
+    }
+
+    boolean contains(String id) {
+        events();
+        return index.containsKey(id);
+    }
+
+    // Reads use the cache once it is loaded and the store's own range reads
+    // until then, so looking at a partition doesn't force decoding all of it
+
+    /**
+     * The cached event, or null if it isn't cached or the cache isn't loaded
+     * yet. Safe without the repository lock; a change being applied at the
+     * same time may or may not be seen.
+     */
+    Event peek(String id) {
+        return cache != null ? index.get(id) : null;
+    }
+
+    Event find(String id) {
+        if (cache == null && store().hasIndexedFind()) {
+            return store().find(id);
+        }
+        // Decoding everything once and keeping it beats decoding it on every lookup
+        events();
+        return index.get(id);
+    }
+
+    List<Event> between(long from, long to) {
+        return cache != null ? EventRanges.between(cache, from, to) : store().loadBetween(from, to);
+    }
+
+    List<Event> upcoming(long now, int limit) {
+        return cache != null ? EventRanges.upcoming(cache, now, limit) : store().loadUpcoming(now, limit);
+    }
+
+    List<Event> past(long now, int offset, int limit) {
+        return cache != null ? EventRanges.past(cache, now, offset, limit) : store().loadPast(now, offset, limit);
+    }
+
+    /**
+     * Applies one change to the cache. Returns false if it changed nothing, in
+     * which case it needn't be written either.
+     */
+    boolean apply(EventMutation change, Collection<String> changedIds) {
+        List<Event> events = events();
+        switch (change.type) {
+            case EventMutation.UPSERT: {
+                changedIds.add(change.id);
+                Event previous = index.put(change.id, change.event);
+                if (previous != null) {
+                    int position = indexOf(events, previous);
+                    if (position >= 0) {
+                        events.remove(position);
+                    }
+                }
+                events.add(EventRanges.insertionPoint(events, change.event), change.event);
+                return true;
+            }
+            case EventMutation.DELETE: {
+                Event previous = index.remove(change.id);
+                if (previous == null) {
+                    return false;
+                }
+                changedIds.add(change.id);
+                int position = indexOf(events, previous);
+                if (position >= 0) {
+                    events.remove(position);
+                }
+                return true;
+            }
+            default: {
+                // Everything older is a prefix of the sorted list
+                List<Event> expired = events.subList(0, EventRanges.lowerBound(events, change.timestamp));
+                if (expired.isEmpty()) {
+                    return false;
+                }
+                for (Event event : expired) {
+                    index.remove(event.getId());
+                    changedIds.add(event.getId());
+                }
+                expired.clear();
+                return true;
+            }
+        }
+    }
+
+    void queue(List<EventMutation> changes) {
+        pendingWrites.addAll(changes);
+    }
+
+    boolean hasPendingWrites() {
+        return !pendingWrites.isEmpty();
+    }
+
+    /** Takes everything queued so far, or returns null if nothing is. */
+    Batch takePending() {
+        if (pendingWrites.isEmpty()) {
+            return null;
+        }
+        // Anything queued went through apply(), so the cache is loaded
+        return new Batch(store(), pendingWrites.drain(), new ArrayList<>(cache));
+    }
+
+    /** Queued changes plus the snapshot they lead to, ready to write outside the lock. */
+    static final class Batch {
+        private final EventStore store;
+        private final List<EventMutation> changes;
+        private final List<Event> snapshot;
+
+        private Batch(EventStore store, List<EventMutation> changes, List<Event> snapshot) {
+            this.store = store;
+            this.changes = changes;
+            this.snapshot = snapshot;
+        }
+
+        void write() {
+            store.write(changes, snapshot);
+        }
+    }
+
+    /** Position of this exact instance: binary search on its timestamp, then the ties. */
+    private static int indexOf(List<Event> events, Event target) {
+        for (int i = EventRanges.lowerBound(events, target.getTimestamp()); i < events.size(); i++) {
+            Event candidate = events.get(i);
+            if (candidate == target) {
+                return i;
+            }
+            if (candidate.getTimestamp() != target.getTimestamp()) {
+                break;
+            }
+        }
+        // The caller changed the timestamp on the cached instance before saving it,
+        // so it isn't where the ordering says it should be
+        return events.indexOf(target);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.clock.data;
+
+import com.example.clock.model.Event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Range lookups over a list that is already sorted by timestamp.
+ * Both the in-memory cache and stores without a native index use these.
+ */
+final class EventRanges {
+
+    private EventRanges() {
+    }
+
+    /** Events with {@code from <= timestamp < to}, ascending. */
+    static List<Event> between(List<Event> sorted, long from, long to) {
+        int start = lowerBound(sorted, from);
+        int end = lowerBound(sorted, to);
+        return new ArrayList<>(sorted.subList(start, Math.max(start, end)));
+    }
+
+    /** Up to {@code limit} events with {@code timestamp > now}, soonest first. */
+    static List<Event> upcoming(List<Event> sorted, long now, int limit) {
+        int start = upperBound(sorted, now);
+        int end = (int) Math.min(sorted.size(), (long) start + limit);
+        return new ArrayList<>(sorted.subList(start, end));
+    }
+
+    /** Events with {@code timestamp <= now}, newest first, skipping {@code offset}. */
+    static List<Event> past(List<Event> sorted, long now, int offset, int limit) {
+        List<Event> page = new ArrayList<>();
+        for (int i = upperBound(sorted, now) - 1 - offset; i >= 0 && page.size() < limit; i--) {
+            page.add(sorted.get(i));
+        }
+        return page;
+    }
+
+    /** Linear check used before a store marks its data as pre-sorted. */
+    static boolean isSorted(List<Event> events) {
+        for (int i = 1; i < events.size(); i++) {
+            if (events.get(i - 1).compareTo(events.get(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Where {@code event} goes in {@code sorted}: by timestamp, then id. */
+    static int insertionPoint(List<Event> sorted, Event event) {
+        int lo = lowerBound(sorted, event.getTimestamp());
+        int hi = upperBound(sorted, event.getTimestamp());
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid).compareTo(event) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** First index whose timestamp is {@code >= timestamp}. */
+    static int lowerBound(List<Event> sorted, long timestamp) {
+        int lo = 0;
+        int hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid).getTimestamp() < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** First index whose timestamp is {@code > timestamp}. */
+    static int upperBound(List<Event> sorted, long timestamp) {
+        int lo = 0;
+        int hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid).getTimestamp() <= timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
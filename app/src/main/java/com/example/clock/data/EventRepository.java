@@ -1,90 +1,731 @@
 package com.example.clock.data;
 
+import android.app.Activity;
+import android.app.Application;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.LifecycleOwner;
 
 import com.example.clock.model.Event;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.example.clock.model.Recurrence;
 
-import java.lang.reflect.Type;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class EventRepository {
+    private static final String TAG = "EventRepository";
     private static final String PREF_NAME = "clock_prefs";
     private static final String KEY_EVENTS = "events";
-    private SharedPreferences sharedPreferences;
-    private Gson gson;
+    private static final String KEY_PAST_EVENTS = "events_past";
+    private static final String JOURNAL_FILE = "events.journal";
+    private static final String PAST_JOURNAL_FILE = "events_past.journal";
+    private static final String BINARY_FILE = "events.bin";
+    private static final String PAST_BINARY_FILE = "events_past.bin";
+    private static final String ARCHIVE_DIR = "archive";
+    private static final String KEY_STORAGE_MODE = "storage_mode";
+
+    public enum StorageMode {
+        // Whole list rewritten as one JSON string on every mutation
+        PREFS,
+        // Mutations appended to a journal, folded into the JSON snapshot in the background
+        JOURNAL,
+        // One row per event in SQLite, indexed on timestamp for range reads
+        SQLITE,
+        // Memory-mapped fixed-width records; names and places decoded on first use
+        BINARY
+    }
+
+    // Chosen once per process from BuildConfig.EVENT_STORAGE_MODE, see resolveStorageMode()
+    private static StorageMode storageMode = StorageMode.JOURNAL;
+    private static EventRepository instance;
+
+    // All async disk and decode work runs here. One thread keeps writes in
+    // submission order. The queue is unbounded: most callers are on the main
+    // thread, and pushing back on them would mean running disk work there.
+    private static final ThreadPoolExecutor IO_EXECUTOR = createIoExecutor();
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public interface OnEventsChangedListener {
+        /**
+         * Called on the main thread after a commit that changed something.
+         *
+         * @param version    the data version after the change
+         * @param changedIds ids that were added, updated or removed
+         */
+        void onEventsChanged(long version, Set<String> changedIds);
+    }
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Events still ahead ("hot") and those that have passed ("cold") live in
+    // separate partitions, each with its own store and cache, so the main screen
+    // only ever decodes the upcoming set and history only the past one. An
+    // upsert goes to whichever side of now its timestamp falls on; events in
+    // the hot partition that have since passed are moved over by rollOver().
+    // A recurring event counts as upcoming while its series has occurrences
+    // left, and is stored at the next one.
+    // Invariant: nothing in the cold partition is later than the current time.
+    private final EventPartition hot = new EventPartition(() -> createStore(false));
+    private final EventPartition cold = new EventPartition(() -> createStore(true));
+    // Shared by both partitions in SQLite mode
+    private EventDatabase database;
+    // Events that aged out of the past partition. Has its own lock, so paging
+    // through old history never waits on the live data.
+    private final EventArchive archive;
+
+    // Bumped by every commit that changes something. Screens remember the value
+    // they rendered and skip reloading while it stays the same.
+    private volatile long version;
+    private final List<OnEventsChangedListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Write-behind: commits update the caches at once and queue their changes
+    // in the partitions; one write per store covers everything queued once
+    // things go quiet for FLUSH_DELAY_MS (or FLUSH_MAX_DELAY_MS at the
+    // latest), when an activity pauses, or when flush() is called.
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final long FLUSH_MAX_DELAY_MS = 3000;
+    private long firstPendingAt;
+    // Set while anything is queued; read without the lock when an activity pauses
+    private volatile boolean writesPending;
+    // Serializes store writes, which run outside the repository lock so reads
+    // from the cache aren't blocked on disk
+    private final Object flushLock = new Object();
+    private final Runnable scheduledFlush = this::flushAsync;
+
+    public static synchronized EventRepository getInstance(Context context) {
+        if (instance == null) {
+            storageMode = resolveStorageMode(context.getApplicationContext());
+            instance = new EventRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private EventRepository(Context context) {
+        this.context = context;
+        this.archive = new EventArchive(new File(context.getFilesDir(), ARCHIVE_DIR));
+        if (context instanceof Application) {
+            ((Application) context).registerActivityLifecycleCallbacks(new FlushOnPause());
+        }
+        // Open both stores on the I/O thread, ahead of any task queued after
+        // this: on the first run that imports the older store's data
+        IO_EXECUTOR.execute(() -> {
+            try {
+                synchronized (this) {
+                    hot.store();
+                    cold.store();
+                }
+            } catch (RuntimeException e) {
+                // The next read opens them again and reports the failure to its caller
+                Log.e(TAG, "Could not open event stores", e);
+            }
+        });
+    }
 
-    public EventRepository(Context context) {
-        sharedPreferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
+    /**
+     * The build's storage mode, unless this install's data already lives in a
+     * store that mode can't import from. SQLite and the binary file import the
+     * prefs/journal data, and prefs and journal read each other, but nothing
+     * reads SQLite or the binary file back; an install already on one of
+     * those stays there.
+     */
+    private static StorageMode resolveStorageMode(Context context) {
+        StorageMode wanted = StorageMode.valueOf(com.example.clock.BuildConfig.EVENT_STORAGE_MODE);
+        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        String stored = prefs.getString(KEY_STORAGE_MODE, null);
+        StorageMode current = StorageMode.JOURNAL;
+        if (stored != null) {
+            try {
+                current = StorageMode.valueOf(stored);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown storage mode " + stored);
+            }
+        }
+        StorageMode mode = wanted;
+        if (current != wanted && (current == StorageMode.SQLITE || current == StorageMode.BINARY)) {
+            Log.w(TAG, "Keeping " + current + " storage; cannot migrate it to " + wanted);
+            mode = current;
+        }
+        if (!mode.name().equals(stored)) {
+            // Committed before any store opens, so a crash can't leave data in a
+            // store the next start doesn't look at
+            prefs.edit().putString(KEY_STORAGE_MODE, mode.name()).commit();
+        }
+        return mode;
+    }
+
+    private static ThreadPoolExecutor createIoExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "event-io");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Opens the store for one partition. The hot partition keeps the original
+     * names, so data from before partitioning loads as "upcoming" and is moved
+     * across by the first rollover.
+     */
+    private EventStore createStore(boolean past) {
+        SharedPreferences sharedPreferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        PrefsEventStore prefsStore = new PrefsEventStore(sharedPreferences, past ? KEY_PAST_EVENTS : KEY_EVENTS);
+        File journal = new File(context.getFilesDir(), past ? PAST_JOURNAL_FILE : JOURNAL_FILE);
+        if (storageMode == StorageMode.JOURNAL) {
+            return new JournalEventStore(prefsStore, journal, IO_EXECUTOR);
+        } else if (storageMode == StorageMode.SQLITE) {
+            // The journal store reads the prefs snapshot plus any pending journal,
+            // which is exactly what needs importing on first run
+            return new SqliteEventStore(database(), past ? EventDatabase.TABLE_PAST_EVENTS : EventDatabase.TABLE_EVENTS,
+                    new JournalEventStore(prefsStore, journal, IO_EXECUTOR));
+        } else if (storageMode == StorageMode.BINARY) {
+            return new BinaryEventStore(new File(context.getFilesDir(), past ? PAST_BINARY_FILE : BINARY_FILE),
+                    new JournalEventStore(prefsStore, journal, IO_EXECUTOR));
+        }
+        if (journal.exists()) {
+            // Left over from journal mode, fold it in before dropping to plain prefs
+            new JournalEventStore(prefsStore, journal, IO_EXECUTOR).compact();
+        }
+        return prefsStore;
     }
 
-    public List<Event> getEvents() {
-        String json = sharedPreferences.getString(KEY_EVENTS, null);
-        List<Event> events = new ArrayList<>();
-        if (json != null) {
-            Type type = new TypeToken<List<Event>>() {
-            }.getType();
-            events = gson.fromJson(json, type);
+    private synchronized EventDatabase database() {
+        if (database == null) {
+            database = new EventDatabase(context);
         }
-        // Always return sorted
-        Collections.sort(events);
+        return database;
+    }
+
+    /** Monotonically increasing; changes whenever the stored events do. */
+    public long getVersion() {
+        return version;
+    }
+
+    public void addOnEventsChangedListener(OnEventsChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeOnEventsChangedListener(OnEventsChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    public static StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Returns a sorted copy of all events. The list is the caller's to modify,
+     * but the Event objects are shared with the cache: persist any change to
+     * them through {@link #addEvent(Event)}.
+     */
+    public synchronized List<Event> getEvents() {
+        rollOver(System.currentTimeMillis());
+        // After a rollover everything cold is at or before now and everything hot after it
+        List<Event> events = new ArrayList<>(cold.events());
+        events.addAll(hot.events());
         return events;
     }
 
+    /** Events with {@code from <= timestamp < to}, ascending. */
+    public synchronized List<Event> getEventsBetween(long from, long to) {
+        long now = System.currentTimeMillis();
+        if (from > now) {
+            return hot.between(from, to);
+        }
+        rollOver(now);
+        List<Event> events = cold.between(from, to);
+        events.addAll(hot.between(from, to));
+        return events;
+    }
+
+    /**
+     * Up to {@code limit} events still ahead of {@code now}, soonest first, a
+     * recurring event once at its next occurrence. Only the upcoming partition
+     * is read, so {@code now} should be the current time.
+     */
+    public synchronized List<Event> getUpcoming(long now, int limit) {
+        // Brings series whose occurrence just passed forward to their next one
+        rollOver(Math.min(now, System.currentTimeMillis()));
+        return hot.upcoming(now, limit);
+    }
+
+    /** A page of events at or before {@code now}, newest first. */
+    public synchronized List<Event> getPast(long now, int offset, int limit) {
+        rollOver(Math.min(now, System.currentTimeMillis()));
+        List<Event> upcoming = hot.events();
+        if (upcoming.isEmpty() || upcoming.get(0).getTimestamp() > now) {
+            return cold.past(now, offset, limit);
+        }
+        // Asked about a moment still ahead: the hot events up to it come first
+        List<Event> events = new ArrayList<>(cold.events());
+        events.addAll(upcoming.subList(0, EventRanges.upperBound(upcoming, now)));
+        return EventRanges.past(events, now, offset, limit);
+    }
+
+    /** The stored event with this id, or null. */
+    public synchronized Event getById(String id) {
+        Event event = hot.find(id);
+        return event != null ? event : cold.find(id);
+    }
+
+    /**
+     * The event with this id if it is already in memory, else null without
+     * touching disk. Takes no lock, so it never waits behind disk work; cheap
+     * enough for the main thread when opening a screen by id. Fall back to
+     * {@link #getByIdAsync} on a miss.
+     */
+    public Event peekById(String id) {
+        Event event = hot.peek(id);
+        return event != null ? event : cold.peek(id);
+    }
+
+    public synchronized boolean contains(String id) {
+        return getById(id) != null;
+    }
+
+    /** Deletes the event with this id; returns false if there was none. */
+    public synchronized boolean removeById(String id) {
+        if (!contains(id)) {
+            return false;
+        }
+        edit().delete(id).commit();
+        return true;
+    }
+
+    // Async variants. Work runs on the shared I/O thread and the callback on the
+    // main thread; pass the calling activity as owner so a result arriving after
+    // it is destroyed is dropped.
+
+    public RepositoryTask getEventsAsync(LifecycleOwner owner, Callback<List<Event>> callback) {
+        return runAsync(owner, this::getEvents, callback);
+    }
+
+    public RepositoryTask getUpcomingAsync(LifecycleOwner owner, long now, int limit,
+            Callback<List<Event>> callback) {
+        return runAsync(owner, () -> getUpcoming(now, limit), callback);
+    }
+
+    public RepositoryTask getPastAsync(LifecycleOwner owner, long now, int offset, int limit,
+            Callback<List<Event>> callback) {
+        return runAsync(owner, () -> getPast(now, offset, limit), callback);
+    }
+
+    public RepositoryTask getByIdAsync(LifecycleOwner owner, String id, Callback<Event> callback) {
+        return runAsync(owner, () -> getById(id), callback);
+    }
+
+    /**
+     * Runs arbitrary read work (e.g. a repository read combined with a calendar
+     * query) on the I/O thread. Skipped if cancelled before it starts. If the
+     * work throws, the failure is logged and no callback runs.
+     */
+    public <T> RepositoryTask runAsync(LifecycleOwner owner, Callable<T> work, Callback<T> callback) {
+        return submit(owner, work, callback, null, true);
+    }
+
+    /**
+     * Like {@link #runAsync(LifecycleOwner, Callable, Callback)}, but if the work
+     * throws, {@code onError} gets the exception on the main thread instead.
+     * Exactly one of the two runs unless the task is cancelled.
+     */
+    public <T> RepositoryTask runAsync(LifecycleOwner owner, Callable<T> work, Callback<T> callback,
+            Callback<Exception> onError) {
+        return submit(owner, work, callback, onError, true);
+    }
+
+    /**
+     * Like {@link #runAsync} but for work that writes: it always runs, even if the
+     * owner is destroyed first; only the callback is dropped.
+     */
+    public <T> RepositoryTask runWriteAsync(LifecycleOwner owner, Callable<T> work, Callback<T> callback) {
+        return submit(owner, work, callback, null, false);
+    }
+
+    public <T> RepositoryTask runWriteAsync(LifecycleOwner owner, Callable<T> work, Callback<T> callback,
+            Callback<Exception> onError) {
+        return submit(owner, work, callback, onError, false);
+    }
+
+    private <T> RepositoryTask submit(LifecycleOwner owner, Callable<T> work, Callback<T> callback,
+            Callback<Exception> onError, boolean skippable) {
+        RepositoryTask task = new RepositoryTask();
+        task.bindTo(owner);
+        task.start(IO_EXECUTOR.submit(() -> {
+            if (skippable && task.isCancelled()) {
+                return;
+            }
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                // Not rethrown: a store that fails to read (e.g. a damaged file)
+                // would otherwise crash every start. The caller decides what to show.
+                Log.e(TAG, "Event repository task failed", e);
+                mainHandler.post(() -> {
+                    task.unbind();
+                    if (!task.isCancelled() && onError != null) {
+                        onError.onResult(e);
+                    }
+                });
+                return;
+            }
+            mainHandler.post(() -> {
+                task.unbind();
+                if (!task.isCancelled() && callback != null) {
+                    callback.onResult(result);
+                }
+            });
+        }), skippable);
+        return task;
+    }
+
     public void addEvent(Event event) {
-        List<Event> events = getEvents();
-        boolean found = false;
-        for (int i = 0; i < events.size(); i++) {
-            if (events.get(i).getId().equals(event.getId())) {
-                events.set(i, event);
-                found = true;
-                break;
+        edit().upsert(event).commit();
+    }
+
+    public void deleteEvent(Event event) {
+        edit().delete(event).commit();
+    }
+
+    public void deleteEventsOlderThan(long timestamp) {
+        edit().deleteOlderThan(timestamp).commit();
+    }
+
+    /**
+     * Moves events older than {@code timestamp} out of the live store into the
+     * compressed archive. The archive is written and synced before the live
+     * copies are deleted; if archiving fails nothing is deleted. Does disk I/O,
+     * so call it off the main thread.
+     *
+     * The archive is written without holding the repository lock, so reads
+     * (and the main thread) don't wait on it. Only events still exactly as
+     * they were archived are deleted afterwards; one edited in the meantime
+     * stays live and is archived by a later run.
+     */
+    public void archiveEventsOlderThan(long timestamp) {
+        List<Event> expired;
+        synchronized (this) {
+            rollOver(System.currentTimeMillis());
+            // Cached instances: an edit replaces the instance, which is how a
+            // change made while the archive is written is recognized below
+            expired = EventRanges.between(cold.events(), Long.MIN_VALUE, timestamp);
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        try {
+            archive.append(expired);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not archive old events, keeping them live", e);
+            return;
+        }
+        synchronized (this) {
+            Editor editor = edit();
+            for (Event event : expired) {
+                if (cold.peek(event.getId()) == event) {
+                    editor.delete(event);
+                }
             }
+            editor.commit();
+        }
+    }
+
+    /** Months with archived events, newest first, as "yyyy-MM". */
+    public List<String> getArchivedMonths() {
+        return archive.months();
+    }
+
+    /** Archived events of one month from {@link #getArchivedMonths()}, newest first. */
+    public List<Event> getArchivedEvents(String month) {
+        return archive.load(month);
+    }
+
+    /**
+     * Starts a batch. Any number of changes queued on the returned editor are
+     * applied with a single pass over the caches and at most one write per store:
+     *
+     * <pre>
+     * repository.edit().upsert(a).upsert(b).delete(c).commit();
+     * </pre>
+     */
+    public Editor edit() {
+        return new Editor();
+    }
+
+    public final class Editor {
+        private final List<EventMutation> changes = new ArrayList<>();
+
+        private Editor() {
+        }
+
+        public Editor upsert(Event event) {
+            changes.add(EventMutation.upsert(event));
+            return this;
+        }
+
+        public Editor delete(Event event) {
+            return delete(event.getId());
+        }
+
+        public Editor delete(String id) {
+            changes.add(EventMutation.delete(id));
+            return this;
+        }
+
+        public Editor deleteOlderThan(long timestamp) {
+            changes.add(EventMutation.deleteOlderThan(timestamp));
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return changes.isEmpty();
         }
-        if (!found) {
-            events.add(event);
+
+        public void commit() {
+            EventRepository.this.commit(changes);
+        }
+
+        /**
+         * Commits and flushes on the I/O thread; {@code onDone} runs on the main
+         * thread once the change is on disk.
+         */
+        public RepositoryTask commitAsync(LifecycleOwner owner, Runnable onDone) {
+            final List<EventMutation> batch = new ArrayList<>(changes);
+            return runWriteAsync(owner, () -> {
+                EventRepository.this.commit(batch);
+                flush();
+                return null;
+            }, result -> {
+                if (onDone != null) {
+                    onDone.run();
+                }
+            });
         }
-        saveEvents(events);
     }
 
-    public void deleteEvent(Event event) {
-        List<Event> events = getEvents();
-        // Remove based on ID logic if we had equals implemented, or just naive generic
-        // remove for now
-        // Implementing naive remove by ID
-        for (int i = 0; i < events.size(); i++) {
-            if (events.get(i).getId().equals(event.getId())) {
-                events.remove(i);
-                break;
+    /**
+     * Writes everything committed so far to the store before returning. For
+     * paths that need the data on disk now (receivers, work the process may be
+     * killed after); avoid calling it on the main thread.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            EventPartition.Batch past;
+            EventPartition.Batch upcoming;
+            synchronized (this) {
+                mainHandler.removeCallbacks(scheduledFlush);
+                past = cold.takePending();
+                upcoming = hot.takePending();
+                writesPending = false;
+            }
+            // Past first: if the process dies in between, an event being rolled
+            // over is briefly in both partitions rather than in neither
+            if (past != null) {
+                past.write();
+            }
+            if (upcoming != null) {
+                upcoming.write();
             }
         }
-        saveEvents(events);
     }
 
-    public void deleteEventsOlderThan(long timestamp) {
-        List<Event> events = getEvents();
-        List<Event> toKeep = new ArrayList<>();
-        boolean changed = false;
-        for (Event event : events) {
-            if (event.getTimestamp() >= timestamp) {
-                toKeep.add(event);
+    /** Schedules an immediate flush on the I/O thread. */
+    public void flushAsync() {
+        IO_EXECUTOR.execute(this::flush);
+    }
+
+    /**
+     * Moves events that have passed from the upcoming partition to the past one,
+     * and recurring events on to their next occurrence. Reads that need the
+     * past do this themselves; calling it from background maintenance keeps the
+     * upcoming set small. A move alone doesn't change the version: the events
+     * are the same, only where they are stored moves.
+     */
+    public synchronized void rollOver() {
+        rollOver(System.currentTimeMillis());
+    }
+
+    private void rollOver(long now) {
+        List<Event> upcoming = hot.events();
+        int passed = EventRanges.upperBound(upcoming, now);
+        if (passed == 0) {
+            return;
+        }
+        List<EventMutation> moves = new ArrayList<>(passed);
+        List<EventMutation> advances = new ArrayList<>();
+        for (Event event : upcoming.subList(0, passed)) {
+            long next = event.nextOccurrenceAfter(now);
+            if (next != Recurrence.NONE) {
+                // A series with occurrences left stays upcoming, at the next one
+                advances.add(EventMutation.upsert(event.occurrenceAt(next)));
             } else {
-                changed = true;
+                moves.add(EventMutation.upsert(event));
+            }
+        }
+        Set<String> advancedIds = new HashSet<>();
+        List<EventMutation> hotChanges = new ArrayList<>(1 + advances.size());
+        EventMutation removal = EventMutation.deleteOlderThan(now + 1);
+        hot.apply(removal, new HashSet<>());
+        hotChanges.add(removal);
+        for (EventMutation advance : advances) {
+            hot.apply(advance, advancedIds);
+            hotChanges.add(advance);
+        }
+        Set<String> ignored = new HashSet<>();
+        for (EventMutation move : moves) {
+            cold.apply(move, ignored);
+        }
+        queueWrites(hotChanges, moves, now);
+        if (!advancedIds.isEmpty()) {
+            // Unlike a move, this changes what screens show (the next date)
+            notifyChanged(++version, advancedIds);
+        }
+    }
+
+    private synchronized void commit(List<EventMutation> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // Only forward changes that actually did something, so a no-op
+        // cleanup doesn't cost a write
+        List<EventMutation> hotChanges = new ArrayList<>();
+        List<EventMutation> coldChanges = new ArrayList<>();
+        Set<String> changedIds = new HashSet<>();
+        for (EventMutation change : changes) {
+            switch (change.type) {
+                case EventMutation.UPSERT: {
+                    long next = change.event.nextOccurrenceAfter(now);
+                    boolean upcoming = next != Recurrence.NONE;
+                    if (upcoming && change.event.getTimestamp() <= now) {
+                        // A series saved at a past occurrence is stored at its next one
+                        change = EventMutation.upsert(change.event.occurrenceAt(next));
+                    }
+                    EventPartition target = upcoming ? hot : cold;
+                    if (!target.contains(change.id)) {
+                        // New, or moving across now (e.g. rescheduled into the past):
+                        // drop any copy on the other side
+                        EventMutation removal = EventMutation.delete(change.id);
+                        if (upcoming) {
+                            apply(cold, removal, coldChanges, changedIds);
+                        } else {
+                            apply(hot, removal, hotChanges, changedIds);
+                        }
+                    }
+                    apply(target, change, upcoming ? hotChanges : coldChanges, changedIds);
+                    break;
+                }
+                case EventMutation.DELETE:
+                    if (!apply(hot, change, hotChanges, changedIds)) {
+                        apply(cold, change, coldChanges, changedIds);
+                    }
+                    break;
+                default:
+                    apply(hot, change, hotChanges, changedIds);
+                    apply(cold, change, coldChanges, changedIds);
+                    break;
             }
         }
-        if (changed) {
-            saveEvents(toKeep);
+        if (hotChanges.isEmpty() && coldChanges.isEmpty()) {
+            return;
+        }
+        queueWrites(hotChanges, coldChanges, now);
+        notifyChanged(++version, changedIds);
+    }
+
+    private static boolean apply(EventPartition partition, EventMutation change, List<EventMutation> effective,
+            Set<String> changedIds) {
+        if (!partition.apply(change, changedIds)) {
+            return false;
+        }
+        effective.add(change);
+        return true;
+    }
+
+    private void queueWrites(List<EventMutation> hotChanges, List<EventMutation> coldChanges, long now) {
+        if (!hasPendingWrites()) {
+            firstPendingAt = now;
         }
+        hot.queue(hotChanges);
+        cold.queue(coldChanges);
+        writesPending = hasPendingWrites();
+        scheduleFlush(now);
     }
 
-    private void saveEvents(List<Event> events) {
-        Collections.sort(events);
-        String json = gson.toJson(events);
-        sharedPreferences.edit().putString(KEY_EVENTS, json).apply();
+    private boolean hasPendingWrites() {
+        return hot.hasPendingWrites() || cold.hasPendingWrites();
+    }
+
+    private void scheduleFlush(long now) {
+        long delay = Math.min(FLUSH_DELAY_MS, Math.max(0, firstPendingAt + FLUSH_MAX_DELAY_MS - now));
+        mainHandler.removeCallbacks(scheduledFlush);
+        mainHandler.postDelayed(scheduledFlush, delay);
+    }
+
+    private final class FlushOnPause implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityPaused(Activity activity) {
+            // No lock: the main thread must not wait behind disk work holding it
+            if (writesPending) {
+                flushAsync();
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, android.os.Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, android.os.Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+
+    private void notifyChanged(long newVersion, Set<String> changedIds) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        final Set<String> ids = Collections.unmodifiableSet(changedIds);
+        mainHandler.post(() -> {
+            for (OnEventsChangedListener listener : listeners) {
+                listener.onEventsChanged(newVersion, ids);
+            }
+        });
     }
 }
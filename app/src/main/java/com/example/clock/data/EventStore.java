@@ -0,0 +1,65 @@
+package com.example.clock.data;
+
+import com.example.clock.model.Event;
+
+import java.util.List;
+
+/**
+ * Persistence backend used by {@link EventRepository}.
+ * Implementations decide how events are laid out on disk; the repository
+ * only relies on {@link #loadAll()} returning every stored event in
+ * timestamp order.
+ */
+interface EventStore {
+
+    List<Event> loadAll();
+
+    /**
+     * Persists one batch. {@code changes} is what the batch did, in order;
+     * {@code snapshot} is the complete sorted list after applying it. Stores
+     * write whichever is cheaper for their format and must not keep a
+     * reference to {@code snapshot}.
+     */
+    void write(List<EventMutation> changes, List<Event> snapshot);
+
+    /**
+     * One-time setup that may take a while, e.g. importing the data of an older
+     * store. Called once, by {@link EventPartition}, before anything else;
+     * constructors only record where things are.
+     */
+    default void open() {
+    }
+
+    // Point and range reads. The defaults decode everything and filter it; stores
+    // with an index override them to read only the requested rows.
+
+    /**
+     * True if {@link #find(String)} reads only the matching row. Otherwise a
+     * lookup decodes everything anyway, so {@link EventPartition} loads the
+     * whole store into its cache instead and answers from its id index.
+     */
+    default boolean hasIndexedFind() {
+        return false;
+    }
+
+    default Event find(String id) {
+        for (Event event : loadAll()) {
+            if (event.getId().equals(id)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    default List<Event> loadBetween(long from, long to) {
+        return EventRanges.between(loadAll(), from, to);
+    }
+
+    default List<Event> loadUpcoming(long now, int limit) {
+        return EventRanges.upcoming(loadAll(), now, limit);
+    }
+
+    default List<Event> loadPast(long now, int offset, int limit) {
+        return EventRanges.past(loadAll(), now, offset, limit);
+    }
+}
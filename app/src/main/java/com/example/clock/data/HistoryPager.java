@@ -0,0 +1,323 @@
+package com.example.clock.data;
+
+import androidx.lifecycle.LifecycleOwner;
+
+import com.example.clock.model.Event;
+import com.example.clock.model.EventTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Past events, newest first, read in fixed-size pages: the live past events
+ * first, then the archive month by month. Only a bounded window of pages is
+ * held; as the list is scrolled the window loads the next page at one end and
+ * drops the farthest page at the other, reloading it if the list is scrolled
+ * back.
+ *
+ * Pages are read on the repository's I/O thread, and the window's
+ * {@link EventTable} is built there too, so the main thread only swaps it in.
+ * Every page is read as of the moment of the last {@link #reload()} or
+ * {@link #refresh()}, which keeps the live pages' offsets stable while the
+ * window moves. Main thread only.
+ */
+public final class HistoryPager {
+
+    public interface Listener {
+        /** The window changed; show {@code window}, whose row 0 is the newest event held. */
+        void onWindowChanged(EventTable window);
+    }
+
+    private final EventRepository repository;
+    private final LifecycleOwner owner;
+    private final int pageSize;
+    private final int maxPages;
+    private final Listener listener;
+
+    // Where a page starts: an offset into the live past events, or into one
+    // archived month
+    private static final int LIVE = -1;
+
+    private static final class PageKey {
+        final int month;
+        final int offset;
+
+        PageKey(int month, int offset) {
+            this.month = month;
+            this.offset = offset;
+        }
+    }
+
+    private static final class Page {
+        final PageKey key;
+        final List<Event> events;
+        // Null after the last page
+        final PageKey next;
+
+        Page(PageKey key, List<Event> events, PageKey next) {
+            this.key = key;
+            this.events = events;
+            this.next = next;
+        }
+    }
+
+    private static final class Window {
+        List<Page> pages;
+        int firstPage;
+        EventTable table;
+        List<String> months;
+        // Set when the window was read from the start
+        List<PageKey> keys;
+    }
+
+    // The last archived month read, so paging through a month reads it once.
+    // Swapped as a whole rather than updated in place.
+    private static final class MonthCache {
+        final String month;
+        final List<Event> events;
+
+        MonthCache(String month, List<Event> events) {
+            this.month = month;
+            this.events = events;
+        }
+    }
+
+    private volatile MonthCache monthCache;
+
+    private long snapshotTime;
+    private List<String> months = Collections.emptyList();
+    // Start key of every page found so far, by page number, so a page dropped
+    // from the front of the window can be read again
+    private final List<PageKey> keys = new ArrayList<>();
+    private List<Page> pages = Collections.emptyList();
+    private int firstPage;
+    private boolean loading;
+    // Bumped by every reload or refresh; a page for the previous snapshot is dropped
+    private int generation;
+
+    /**
+     * @param maxPages pages held at most; at least 3, so the pages around the
+     *                 visible rows are never the ones dropped
+     */
+    public HistoryPager(EventRepository repository, LifecycleOwner owner, int pageSize, int maxPages,
+            Listener listener) {
+        if (pageSize <= 0 || maxPages < 3) {
+            throw new IllegalArgumentException("pageSize " + pageSize + ", maxPages " + maxPages);
+        }
+        this.repository = repository;
+        this.owner = owner;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.listener = listener;
+    }
+
+    /** Starts over from the newest past event, as of now. */
+    public void reload() {
+        read(0, 1);
+    }
+
+    /**
+     * Reads the pages held again, as of now, keeping the window at the same
+     * page numbers, so a change doesn't send the list back to the top. Pages
+     * before the window are re-read too (the archive only once per month) to
+     * find where each page starts now. Same as {@link #reload()} if nothing
+     * has been loaded yet.
+     */
+    public void refresh() {
+        if (pages.isEmpty()) {
+            reload();
+        } else {
+            read(firstPage, pages.size());
+        }
+    }
+
+    /** Whether the event with this id is in the window. */
+    public boolean holds(String id) {
+        for (Page page : pages) {
+            for (Event event : page.events) {
+                if (id.equals(event.getId())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads pages {@code first} to {@code first + count - 1} from the start as
+     * of now, or the last {@code count} pages if there are fewer now.
+     */
+    private void read(final int first, final int count) {
+        final int thisGeneration = ++generation;
+        final long now = System.currentTimeMillis();
+        loading = true;
+        repository.runAsync(owner, () -> {
+            // Cleared here rather than on the main thread, so a page read still
+            // running for the old snapshot can't put a stale month back
+            monthCache = null;
+            Window window = new Window();
+            window.months = repository.getArchivedMonths();
+            window.keys = new ArrayList<>();
+            List<Page> read = new ArrayList<>();
+            PageKey key = new PageKey(LIVE, 0);
+            while (true) {
+                Page page = loadPage(now, window.months, key);
+                window.keys.add(page.key);
+                read.add(page);
+                if (read.size() > count) {
+                    read.remove(0);
+                }
+                if (window.keys.size() == first + count || page.next == null) {
+                    break;
+                }
+                key = page.next;
+            }
+            window.pages = read;
+            window.firstPage = window.keys.size() - read.size();
+            window.table = toTable(read);
+            return window;
+        }, window -> {
+            if (thisGeneration != generation) {
+                return;
+            }
+            loading = false;
+            snapshotTime = now;
+            months = window.months;
+            keys.clear();
+            keys.addAll(window.keys);
+            show(window);
+        }, error -> onFailed(thisGeneration));
+    }
+
+    /**
+     * Tells the pager which rows of the window are on screen; loads the next
+     * or previous page once they come within {@code prefetch} rows of an end.
+     */
+    public void onVisibleRange(int first, int last, int prefetch) {
+        if (loading || pages.isEmpty() || last < 0) {
+            return;
+        }
+        int size = windowSize();
+        Page lastPage = pages.get(pages.size() - 1);
+        if (last >= size - prefetch && lastPage.next != null) {
+            load(lastPage.next, true);
+        } else if (first < prefetch && firstPage > 0) {
+            load(keys.get(firstPage - 1), false);
+        }
+    }
+
+    private void load(final PageKey key, final boolean append) {
+        loading = true;
+        final int thisGeneration = generation;
+        final long now = snapshotTime;
+        final List<String> months = this.months;
+        final List<Page> current = pages;
+        final int currentFirst = firstPage;
+        repository.runAsync(owner, () -> {
+            Page page = loadPage(now, months, key);
+            Window window = new Window();
+            List<Page> moved = new ArrayList<>(current);
+            if (append) {
+                moved.add(page);
+                window.firstPage = currentFirst;
+                while (moved.size() > maxPages) {
+                    moved.remove(0);
+                    window.firstPage++;
+                }
+            } else {
+                moved.add(0, page);
+                window.firstPage = currentFirst - 1;
+                while (moved.size() > maxPages) {
+                    moved.remove(moved.size() - 1);
+                }
+            }
+            window.pages = moved;
+            window.table = toTable(moved);
+            return window;
+        }, window -> {
+            if (thisGeneration != generation) {
+                return;
+            }
+            loading = false;
+            show(window);
+        }, error -> onFailed(thisGeneration));
+    }
+
+    /** A read failed (and was logged); keep what is shown, and let scrolling try again. */
+    private void onFailed(int failedGeneration) {
+        if (failedGeneration == generation) {
+            loading = false;
+        }
+    }
+
+    private void show(Window window) {
+        pages = window.pages;
+        firstPage = window.firstPage;
+        Page lastPage = pages.get(pages.size() - 1);
+        if (firstPage + pages.size() == keys.size() && lastPage.next != null) {
+            // First time past this page
+            keys.add(lastPage.next);
+        }
+        listener.onWindowChanged(window.table);
+    }
+
+    private int windowSize() {
+        int size = 0;
+        for (Page page : pages) {
+            size += page.events.size();
+        }
+        return size;
+    }
+
+    /**
+     * Reads the page at {@code key}; runs on the I/O thread. Skips over empty
+     * stretches (a live list that ended on a page boundary, an empty month),
+     * so only the very last page can come back empty.
+     */
+    private Page loadPage(long now, List<String> months, PageKey key) {
+        PageKey start = key;
+        while (true) {
+            if (key.month == LIVE) {
+                List<Event> events = repository.getPast(now, key.offset, pageSize);
+                PageKey next = events.size() == pageSize ? new PageKey(LIVE, key.offset + pageSize)
+                        : firstMonth(months, 0);
+                if (!events.isEmpty() || next == null) {
+                    return new Page(start, events, next);
+                }
+                key = next;
+            } else {
+                List<Event> month = archivedMonth(months.get(key.month));
+                int end = Math.min(month.size(), key.offset + pageSize);
+                PageKey next = end < month.size() ? new PageKey(key.month, end)
+                        : firstMonth(months, key.month + 1);
+                if (key.offset < end || next == null) {
+                    List<Event> events = new ArrayList<>(month.subList(Math.min(key.offset, end), end));
+                    return new Page(start, events, next);
+                }
+                key = next;
+            }
+        }
+    }
+
+    private static PageKey firstMonth(List<String> months, int month) {
+        return month < months.size() ? new PageKey(month, 0) : null;
+    }
+
+    private List<Event> archivedMonth(String month) {
+        MonthCache cache = monthCache;
+        if (cache == null || !cache.month.equals(month)) {
+            cache = new MonthCache(month, repository.getArchivedEvents(month));
+            monthCache = cache;
+        }
+        return cache.events;
+    }
+
+    private static EventTable toTable(List<Page> pages) {
+        List<Event> events = new ArrayList<>();
+        for (Page page : pages) {
+            events.addAll(page.events);
+        }
+        return EventTable.of(events);
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.clock.data;
+
+import android.util.Log;
+
+import com.example.clock.model.Event;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Snapshot + append-only journal.
+ *
+ * The snapshot is the same JSON list {@link PrefsEventStore} writes, so switching
+ * modes keeps existing data. Mutations are appended to a small line-based journal
+ * file instead of rewriting the list; once the journal grows past
+ * {@link #COMPACT_THRESHOLD} records a task on the given executor folds it into
+ * the snapshot and truncates it.
+ *
+ * Journal lines are one JSON object each:
+ * {"op":"put","event":{...}}, {"op":"del","id":"..."}, {"op":"trim","before":ts}.
+ * Replaying them is idempotent, so a crash between writing the snapshot and
+ * truncating the journal only costs a redundant replay.
+ */
+class JournalEventStore implements EventStore {
+    private static final String TAG = "JournalEventStore";
+
+    static final int COMPACT_THRESHOLD = 64;
+
+    private static final String OP_PUT = "put";
+    private static final String OP_DELETE = "del";
+    private static final String OP_TRIM = "trim";
+
+    // Shared by every instance: a store built only to import or fold the
+    // journal (see EventRepository) points at the same file as the live one.
+    private static final Object LOCK = new Object();
+    // Record counts per journal path; each partition has its own journal
+    private static final Map<String, JournalState> STATES = new HashMap<>();
+
+    private final PrefsEventStore snapshot;
+    private final File journalFile;
+    // Runs compaction; the repository's I/O thread, so it queues behind the writes
+    private final Executor compactor;
+
+    JournalEventStore(PrefsEventStore snapshot, File journalFile, Executor compactor) {
+        this.snapshot = snapshot;
+        this.journalFile = journalFile;
+        this.compactor = compactor;
+    }
+
+    private static final class JournalState {
+        int pendingRecords = -1;
+        boolean compactionScheduled = false;
+    }
+
+    // Callers hold LOCK
+    private JournalState state() {
+        JournalState state = STATES.get(journalFile.getPath());
+        if (state == null) {
+            state = new JournalState();
+            STATES.put(journalFile.getPath(), state);
+        }
+        return state;
+    }
+
+    @Override
+    public List<Event> loadAll() {
+        synchronized (LOCK) {
+            List<Event> base = snapshot.loadAll();
+            if (!journalFile.exists()) {
+                return base;
+            }
+            Map<String, Event> byId = new LinkedHashMap<>();
+            for (Event event : base) {
+                byId.put(event.getId(), event);
+            }
+            replay(byId);
+            List<Event> events = new ArrayList<>(byId.values());
+            // The snapshot part is already in order and puts are few; TimSort only
+            // has to merge those in, which is close to linear
+            if (!EventRanges.isSorted(events)) {
+                Collections.sort(events);
+            }
+            return events;
+        }
+    }
+
+    @Override
+    public void write(List<EventMutation> changes, List<Event> snapshotAfter) {
+        List<String> records = new ArrayList<>(changes.size());
+        for (EventMutation change : changes) {
+            records.add(toRecord(change));
+        }
+        append(records, snapshotAfter);
+    }
+
+    /** Folds the journal into the snapshot right away. */
+    void compact() {
+        synchronized (LOCK) {
+            JournalState state = state();
+            state.compactionScheduled = false;
+            if (!journalFile.exists()) {
+                state.pendingRecords = 0;
+                return;
+            }
+            List<Event> events = loadAll();
+            snapshot.save(events, true);
+            if (!journalFile.delete()) {
+                Log.w(TAG, "Could not truncate journal " + journalFile);
+            }
+            state.pendingRecords = 0;
+        }
+    }
+
+    private void append(List<String> records, List<Event> snapshotAfter) {
+        synchronized (LOCK) {
+            JournalState state = state();
+            if (state.pendingRecords < 0) {
+                state.pendingRecords = countRecords();
+            }
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true),
+                    StandardCharsets.UTF_8))) {
+                for (String record : records) {
+                    writer.write(record);
+                    writer.write('\n');
+                }
+            } catch (IOException e) {
+                // Journal unusable: fall back to a full rewrite so the batch isn't lost
+                Log.e(TAG, "Journal append failed, writing snapshot instead", e);
+                snapshot.save(snapshotAfter, true);
+                if (journalFile.delete()) {
+                    state.pendingRecords = 0;
+                }
+                return;
+            }
+            state.pendingRecords += records.size();
+            if (state.pendingRecords >= COMPACT_THRESHOLD && !state.compactionScheduled) {
+                state.compactionScheduled = true;
+                compactor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        compact();
+                    }
+                });
+            }
+        }
+    }
+
+    private static String toRecord(EventMutation change) {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = EventCodec.newWriter(out);
+            writer.beginObject();
+            switch (change.type) {
+                case EventMutation.UPSERT:
+                    writer.name("op").value(OP_PUT);
+                    writer.name("event");
+                    EventCodec.write(writer, change.event);
+                    break;
+                case EventMutation.DELETE:
+                    writer.name("op").value(OP_DELETE);
+                    writer.name("id").value(change.id);
+                    break;
+                default:
+                    writer.name("op").value(OP_TRIM);
+                    writer.name("before").value(change.timestamp);
+                    break;
+            }
+            writer.endObject();
+            writer.flush();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    private void replay(Map<String, Event> byId) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    apply(line, byId);
+                } catch (IOException | RuntimeException e) {
+                    // A torn last line after a crash; everything before it is still valid
+                    Log.w(TAG, "Skipping corrupt journal record", e);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read journal", e);
+        }
+    }
+
+    private static void apply(String line, Map<String, Event> byId) throws IOException {
+        String op = null;
+        Event event = null;
+        String id = null;
+        long before = 0;
+
+        JsonReader reader = EventCodec.newReader(line);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "op":
+                    op = reader.nextString();
+                    break;
+                case "event":
+                    event = EventCodec.read(reader);
+                    break;
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "before":
+                    before = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (OP_PUT.equals(op) && event != null) {
+            byId.put(event.getId(), event);
+        } else if (OP_DELETE.equals(op)) {
+            byId.remove(id);
+        } else if (OP_TRIM.equals(op)) {
+            Iterator<Event> it = byId.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().getTimestamp() < before) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private int countRecords() {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            while (reader.readLine() != null) {
+                count++;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read journal", e);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.clock.data;
+
+import com.example.clock.model.Event;
+import com.example.clock.model.StringPool;
+
+/**
+ * An event backed by a record in the binary event file. Timestamp, flags and id
+ * come from the fixed-width columns when the row is loaded; name and place stay
+ * in the file's string pool until something asks for them (in practice, when the
+ * row is bound in the list).
+ */
+final class MappedEvent extends Event {
+    private final transient StringPool pool;
+    private final transient int nameRef;
+    private final transient int placeRef;
+    private transient boolean nameLoaded;
+    private transient boolean placeLoaded;
+    // Set once name or place is replaced, so the refs no longer describe them
+    private transient boolean edited;
+
+    MappedEvent(String id, long timestamp, StringPool pool, int nameRef, int placeRef) {
+        super(id, null, null, timestamp);
+        this.pool = pool;
+        this.nameRef = nameRef;
+        this.placeRef = placeRef;
+    }
+
+    @Override
+    public String getName() {
+        if (!nameLoaded) {
+            super.setName(pool.read(nameRef));
+            nameLoaded = true;
+        }
+        return super.getName();
+    }
+
+    @Override
+    public void setName(String name) {
+        nameLoaded = true;
+        edited = true;
+        super.setName(name);
+    }
+
+    @Override
+    public String getPlace() {
+        if (!placeLoaded) {
+            super.setPlace(pool.read(placeRef));
+            placeLoaded = true;
+        }
+        return super.getPlace();
+    }
+
+    @Override
+    public void setPlace(String place) {
+        placeLoaded = true;
+        edited = true;
+        super.setPlace(place);
+    }
+
+    @Override
+    public StringPool getTextPool() {
+        return edited ? null : pool;
+    }
+
+    @Override
+    public int getNameRef() {
+        return nameRef;
+    }
+
+    @Override
+    public int getPlaceRef() {
+        return placeRef;
+    }
+
+    // Serialize as a plain Event: the mapping can't travel with it
+    private Object writeReplace() {
+        return occurrenceAt(getTimestamp());
+    }
+}
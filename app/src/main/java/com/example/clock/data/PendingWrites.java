@@ -0,0 +1,49 @@
+package com.example.clock.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Committed changes that haven't reached the store yet.
+ *
+ * Changes to the same id collapse to the last one, so ten edits of an event
+ * become one upsert. Age trims act as barriers: id changes are only merged
+ * within the stretch between two trims, which keeps replay order correct for
+ * stores that apply changes one by one.
+ */
+final class PendingWrites {
+    private final List<EventMutation> merged = new ArrayList<>();
+    private final Map<String, EventMutation> segment = new LinkedHashMap<>();
+
+    void addAll(List<EventMutation> changes) {
+        for (EventMutation change : changes) {
+            if (change.type == EventMutation.DELETE_OLDER_THAN) {
+                closeSegment();
+                merged.add(change);
+            } else {
+                // Re-insert so the entry moves to the position of its latest change
+                segment.remove(change.id);
+                segment.put(change.id, change);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return merged.isEmpty() && segment.isEmpty();
+    }
+
+    /** Returns the merged changes in order and clears the queue. */
+    List<EventMutation> drain() {
+        closeSegment();
+        List<EventMutation> changes = new ArrayList<>(merged);
+        merged.clear();
+        return changes;
+    }
+
+    private void closeSegment() {
+        merged.addAll(segment.values());
+        segment.clear();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.clock.data;
+
+import android.content.SharedPreferences;
+
+import com.example.clock.model.Event;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Original storage: the whole sorted list as one JSON string in SharedPreferences.
+ * Every batch rewrites the full list.
+ *
+ * A companion boolean ({@code <key>_sorted}) records that the list was written in
+ * timestamp order, so loading is a plain decode. Data from older versions lacks
+ * the flag and is sorted once on load.
+ */
+class PrefsEventStore implements EventStore {
+    private final SharedPreferences sharedPreferences;
+    private final String key;
+    private final String sortedKey;
+
+    PrefsEventStore(SharedPreferences sharedPreferences, String key) {
+        this.sharedPreferences = sharedPreferences;
+        this.key = key;
+        this.sortedKey = key + "_sorted";
+    }
+
+    @Override
+    public List<Event> loadAll() {
+        String json = sharedPreferences.getString(key, null);
+        List<Event> events;
+        try {
+            events = EventCodec.decodeList(json);
+        } catch (IOException e) {
+            // Same as the old Gson path: refuse to continue rather than overwrite the data later
+            throw new IllegalStateException("Corrupt event list in " + key, e);
+        }
+        if (!sharedPreferences.getBoolean(sortedKey, false)) {
+            Collections.sort(events);
+        }
+        return events;
+    }
+
+    @Override
+    public void write(List<EventMutation> changes, List<Event> snapshot) {
+        save(snapshot, false);
+    }
+
+    /**
+     * Writes the full list, which callers keep in timestamp order. {@code sync} uses
+     * commit() so callers that must know the snapshot is on disk (journal
+     * compaction) can rely on it.
+     */
+    void save(List<Event> events, boolean sync) {
+        String json = EventCodec.encodeList(events);
+        SharedPreferences.Editor editor = sharedPreferences.edit()
+                .putString(key, json)
+                .putBoolean(sortedKey, EventRanges.isSorted(events));
+        if (sync) {
+            editor.commit();
+        } else {
+            editor.apply();
+        }
+    }
+}
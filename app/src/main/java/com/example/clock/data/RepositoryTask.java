@@ -0,0 +1,79 @@
+package com.example.clock.data;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.concurrent.Future;
+
+/**
+ * Handle for work started through {@link EventRepository}'s async methods.
+ *
+ * Cancelling stops the result from being delivered. Reads that haven't started
+ * yet are skipped altogether; writes always run to completion, since dropping
+ * them would lose data. Tasks bound to a {@link LifecycleOwner} cancel
+ * themselves when it is destroyed.
+ */
+public final class RepositoryTask implements LifecycleEventObserver {
+    private volatile boolean cancelled;
+    private Future<?> future;
+    private boolean interruptible;
+    private Lifecycle lifecycle;
+
+    RepositoryTask() {
+    }
+
+    void start(Future<?> future, boolean interruptible) {
+        synchronized (this) {
+            this.future = future;
+            this.interruptible = interruptible;
+        }
+        if (cancelled) {
+            cancel();
+        }
+    }
+
+    /** Must be called on the main thread. */
+    void bindTo(LifecycleOwner owner) {
+        if (owner == null) {
+            return;
+        }
+        lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            cancelled = true;
+            return;
+        }
+        lifecycle.addObserver(this);
+    }
+
+    /** Must be called on the main thread. */
+    void unbind() {
+        if (lifecycle != null) {
+            lifecycle.removeObserver(this);
+            lifecycle = null;
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            if (future != null && interruptible) {
+                // Never interrupt: a read in progress just finishes and is ignored
+                future.cancel(false);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            cancel();
+            unbind();
+        }
+    }
+}
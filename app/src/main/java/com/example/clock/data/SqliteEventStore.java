@@ -0,0 +1,160 @@
+package com.example.clock.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.clock.model.Event;
+import com.example.clock.model.Recurrence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.clock.data.EventDatabase.COLUMN_CALENDAR_EVENT_ID;
+import static com.example.clock.data.EventDatabase.COLUMN_ID;
+import static com.example.clock.data.EventDatabase.COLUMN_NAME;
+import static com.example.clock.data.EventDatabase.COLUMN_PLACE;
+import static com.example.clock.data.EventDatabase.COLUMN_RECURRENCE;
+import static com.example.clock.data.EventDatabase.COLUMN_TEMPORARY;
+import static com.example.clock.data.EventDatabase.COLUMN_TIMESTAMP;
+
+/**
+ * One row per event, indexed on (timestamp, id). Range reads go straight to the
+ * index so a screen only decodes the rows it shows. Rows with the same
+ * timestamp are ordered by id, the same order {@link EventPartition} keeps its
+ * cache in, so a page served from either lines up with the other.
+ */
+class SqliteEventStore implements EventStore {
+    private static final String[] COLUMNS = {
+            COLUMN_ID, COLUMN_NAME, COLUMN_PLACE, COLUMN_TIMESTAMP, COLUMN_CALENDAR_EVENT_ID, COLUMN_TEMPORARY,
+            COLUMN_RECURRENCE
+    };
+    private static final String ORDER_ASC = COLUMN_TIMESTAMP + " ASC, " + COLUMN_ID + " ASC";
+    private static final String ORDER_DESC = COLUMN_TIMESTAMP + " DESC, " + COLUMN_ID + " DESC";
+
+    private final EventDatabase database;
+    private final String table;
+    private final EventStore legacy;
+
+    /**
+     * @param table  which of the database's event tables this store reads and writes
+     * @param legacy store holding the pre-SQLite data; copied in once, by the
+     *               first {@link #open()} that finds the table not yet imported.
+     */
+    SqliteEventStore(EventDatabase database, String table, EventStore legacy) {
+        this.database = database;
+        this.table = table;
+        this.legacy = legacy;
+    }
+
+    @Override
+    public void open() {
+        SQLiteDatabase db = database.getWritableDatabase();
+        if (!EventDatabase.isImported(db, table)) {
+            db.beginTransaction();
+            try {
+                for (Event event : legacy.loadAll()) {
+                    insertOrReplace(db, table, event);
+                }
+                EventDatabase.markImported(db, table);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    @Override
+    public List<Event> loadAll() {
+        return query(null, null, ORDER_ASC, null);
+    }
+
+    @Override
+    public boolean hasIndexedFind() {
+        return true;
+    }
+
+    @Override
+    public Event find(String id) {
+        List<Event> match = query(COLUMN_ID + " = ?", new String[] { id }, null, "1");
+        return match.isEmpty() ? null : match.get(0);
+    }
+
+    @Override
+    public List<Event> loadBetween(long from, long to) {
+        return query(COLUMN_TIMESTAMP + " >= ? AND " + COLUMN_TIMESTAMP + " < ?",
+                new String[] { String.valueOf(from), String.valueOf(to) }, ORDER_ASC, null);
+    }
+
+    @Override
+    public List<Event> loadUpcoming(long now, int limit) {
+        return query(COLUMN_TIMESTAMP + " > ?", new String[] { String.valueOf(now) }, ORDER_ASC,
+                String.valueOf(limit));
+    }
+
+    @Override
+    public List<Event> loadPast(long now, int offset, int limit) {
+        return query(COLUMN_TIMESTAMP + " <= ?", new String[] { String.valueOf(now) }, ORDER_DESC,
+                offset + ", " + limit);
+    }
+
+    @Override
+    public void write(List<EventMutation> changes, List<Event> snapshot) {
+        SQLiteDatabase db = database.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (EventMutation change : changes) {
+                switch (change.type) {
+                    case EventMutation.UPSERT:
+                        insertOrReplace(db, table, change.event);
+                        break;
+                    case EventMutation.DELETE:
+                        db.delete(table, COLUMN_ID + " = ?", new String[] { change.id });
+                        break;
+                    default:
+                        db.delete(table, COLUMN_TIMESTAMP + " < ?",
+                                new String[] { String.valueOf(change.timestamp) });
+                        break;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private List<Event> query(String selection, String[] args, String orderBy, String limit) {
+        List<Event> events = new ArrayList<>();
+        try (Cursor cursor = database.getReadableDatabase().query(table, COLUMNS, selection, args,
+                null, null, orderBy, limit)) {
+            while (cursor.moveToNext()) {
+                events.add(read(cursor));
+            }
+        }
+        return events;
+    }
+
+    private static Event read(Cursor cursor) {
+        Event event = new Event(cursor.getString(0), cursor.getString(1), cursor.getString(2), cursor.getLong(3));
+        if (!cursor.isNull(4)) {
+            event.setCalendarEventId(cursor.getLong(4));
+        }
+        event.setTemporary(cursor.getInt(5) != 0);
+        if (!cursor.isNull(6)) {
+            event.setRecurrence(Recurrence.decode(cursor.getString(6)));
+        }
+        return event;
+    }
+
+    private static void insertOrReplace(SQLiteDatabase db, String table, Event event) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ID, event.getId());
+        values.put(COLUMN_NAME, event.getName());
+        values.put(COLUMN_PLACE, event.getPlace());
+        values.put(COLUMN_TIMESTAMP, event.getTimestamp());
+        values.put(COLUMN_CALENDAR_EVENT_ID, event.getCalendarEventId());
+        values.put(COLUMN_TEMPORARY, event.isTemporary() ? 1 : 0);
+        values.put(COLUMN_RECURRENCE, event.getRecurrence() != null ? event.getRecurrence().encode() : null);
+        db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+}
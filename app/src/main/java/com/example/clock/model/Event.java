@@ -1,15 +1,20 @@
 package com.example.clock.model;
 
+import android.os.Parcel;
+import android.os.Parcelable;
+
 import java.io.Serializable;
 import java.util.UUID;
 
-public class Event implements Serializable, Comparable<Event> {
+public class Event implements Serializable, Parcelable, Comparable<Event> {
     private String id;
     private String name;
     private String place;
     private long timestamp; // Milliseconds since epoch
     private Long calendarEventId;
     private boolean isTemporary;
+    // Null for one-off events
+    private Recurrence recurrence;
 
     public Event(String name, String place, long timestamp) {
         this.id = UUID.randomUUID().toString();
@@ -18,6 +23,60 @@ public class Event implements Serializable, Comparable<Event> {
         this.timestamp = timestamp;
     }
 
+    // For rebuilding a stored event: skips generating a UUID that would be overwritten anyway
+    public Event(String id, String name, String place, long timestamp) {
+        this.id = id;
+        this.name = name;
+        this.place = place;
+        this.timestamp = timestamp;
+    }
+
+    protected Event(Parcel in) {
+        id = in.readString();
+        name = in.readString();
+        place = in.readString();
+        timestamp = in.readLong();
+        if (in.readByte() != 0) {
+            calendarEventId = in.readLong();
+        }
+        isTemporary = in.readByte() != 0;
+        recurrence = Recurrence.decode(in.readString());
+    }
+
+    public static final Creator<Event> CREATOR = new Creator<Event>() {
+        @Override
+        public Event createFromParcel(Parcel in) {
+            return new Event(in);
+        }
+
+        @Override
+        public Event[] newArray(int size) {
+            return new Event[size];
+        }
+    };
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        // Through the getters: subclasses may load fields lazily
+        dest.writeString(getId());
+        dest.writeString(getName());
+        dest.writeString(getPlace());
+        dest.writeLong(getTimestamp());
+        Long calendarId = getCalendarEventId();
+        dest.writeByte((byte) (calendarId != null ? 1 : 0));
+        if (calendarId != null) {
+            dest.writeLong(calendarId);
+        }
+        dest.writeByte((byte) (isTemporary() ? 1 : 0));
+        Recurrence rule = getRecurrence();
+        dest.writeString(rule != null ? rule.encode() : null);
+    }
+
     public String getId() {
         return id;
     }
@@ -66,9 +125,75 @@ public class Event implements Serializable, Comparable<Event> {
         isTemporary = temporary;
     }
 
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    public void setRecurrence(Recurrence recurrence) {
+        this.recurrence = recurrence;
+    }
+
+    /**
+     * The pool this event's name and place can still be read from by
+     * {@link #getNameRef()} and {@link #getPlaceRef()}, or null if they only
+     * live in this object. Lets a caller keep the refs instead of the strings.
+     */
+    public StringPool getTextPool() {
+        return null;
+    }
+
+    /** Only meaningful if {@link #getTextPool()} isn't null. */
+    public int getNameRef() {
+        return -1;
+    }
+
+    /** Only meaningful if {@link #getTextPool()} isn't null. */
+    public int getPlaceRef() {
+        return -1;
+    }
+
+    public boolean isRecurring() {
+        return getRecurrence() != null;
+    }
+
+    /**
+     * When this event next happens after {@code time}: its timestamp for a
+     * one-off event, the next occurrence for a recurring one, or
+     * {@link Recurrence#NONE} if it is over.
+     */
+    public long nextOccurrenceAfter(long time) {
+        Recurrence rule = getRecurrence();
+        if (rule != null) {
+            return rule.nextAfter(time);
+        }
+        return getTimestamp() > time ? getTimestamp() : Recurrence.NONE;
+    }
+
+    /**
+     * A detached copy of this event, to edit before saving: the instances the
+     * repository hands out are shared with its cache and must not be changed.
+     */
+    public Event copy() {
+        return occurrenceAt(getTimestamp());
+    }
+
+    /** A copy of this event placed at one of its occurrences; same id and rule. */
+    public Event occurrenceAt(long occurrence) {
+        Event copy = new Event(getId(), getName(), getPlace(), occurrence);
+        copy.setCalendarEventId(getCalendarEventId());
+        copy.setTemporary(isTemporary());
+        copy.setRecurrence(getRecurrence());
+        return copy;
+    }
+
     @Override
     public int compareTo(Event o) {
-        // Sort by proximity in time (ascending timestamp)
-        return Long.compare(this.timestamp, o.timestamp);
+        // Sort by proximity in time (ascending timestamp); the id breaks ties so
+        // every store and cache agrees on the order of same-time events
+        int byTime = Long.compare(this.timestamp, o.timestamp);
+        if (byTime != 0 || this.id == null || o.id == null) {
+            return byTime;
+        }
+        return this.id.compareTo(o.id);
     }
 }
@@ -0,0 +1,26 @@
+package com.example.clock.model;
+
+import java.util.UUID;
+
+/** Helpers for storing event ids compactly. */
+public final class EventIds {
+
+    private EventIds() {
+    }
+
+    /**
+     * The id as a UUID if it is one in canonical form (every id the app
+     * generates), else null. Canonical only, so the id reads back unchanged.
+     */
+    public static UUID parseUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
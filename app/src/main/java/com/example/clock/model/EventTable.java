@@ -0,0 +1,296 @@
+package com.example.clock.model;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Read-only, column-oriented copy of a list of events, for holding large lists
+ * (history) without one object graph per event.
+ *
+ * Timestamps, calendar ids and UUID ids live in primitive arrays, the boolean
+ * fields in bitsets, and repeated places share one String. Ids that aren't
+ * canonical UUIDs fall back to a sparse String column, and recurrence rules
+ * live in a sparse column too. Events whose text is still in a store's
+ * {@link StringPool} contribute only the pool and their refs; a name or place
+ * is read from the pool the first time it is asked for.
+ *
+ * Read a row through the getters, or keep one {@link Row} and move it around;
+ * materialize an {@link Event} only when one has to leave the table (e.g. in
+ * an Intent).
+ */
+public final class EventTable {
+    private static final EventTable EMPTY = of(java.util.Collections.<Event>emptyList());
+
+    private final int size;
+    private final long[] timestamps;
+    private final long[] calendarIds;
+    private final long[] idMsb;
+    private final long[] idLsb;
+    // Only allocated if some id isn't a UUID; null entries mean "use idMsb/idLsb"
+    private final String[] otherIds;
+    // Filled from textPools on first read for pooled rows. Strings are
+    // immutable, so a read racing that fill at worst reads the pool twice.
+    private final String[] names;
+    private final String[] places;
+    // Only allocated if some event's text is pooled; non-null entries say
+    // where names/places come from until filled
+    private final StringPool[] textPools;
+    private final int[] nameRefs;
+    private final int[] placeRefs;
+    // Only allocated if some event repeats
+    private final Recurrence[] recurrences;
+    private final BitSet temporary;
+    private final BitSet hasCalendarId;
+
+    private EventTable(int size, long[] timestamps, long[] calendarIds, long[] idMsb, long[] idLsb,
+            String[] otherIds, String[] names, String[] places, StringPool[] textPools, int[] nameRefs,
+            int[] placeRefs, Recurrence[] recurrences, BitSet temporary, BitSet hasCalendarId) {
+        this.size = size;
+        this.timestamps = timestamps;
+        this.calendarIds = calendarIds;
+        this.idMsb = idMsb;
+        this.idLsb = idLsb;
+        this.otherIds = otherIds;
+        this.names = names;
+        this.places = places;
+        this.textPools = textPools;
+        this.nameRefs = nameRefs;
+        this.placeRefs = placeRefs;
+        this.recurrences = recurrences;
+        this.temporary = temporary;
+        this.hasCalendarId = hasCalendarId;
+    }
+
+    public static EventTable empty() {
+        return EMPTY;
+    }
+
+    /** Copies the events, keeping their order. */
+    public static EventTable of(List<Event> events) {
+        int size = events.size();
+        long[] timestamps = new long[size];
+        long[] calendarIds = new long[size];
+        long[] idMsb = new long[size];
+        long[] idLsb = new long[size];
+        String[] otherIds = null;
+        String[] names = new String[size];
+        String[] places = new String[size];
+        StringPool[] textPools = null;
+        int[] nameRefs = null;
+        int[] placeRefs = null;
+        Recurrence[] recurrences = null;
+        BitSet temporary = new BitSet(size);
+        BitSet hasCalendarId = new BitSet(size);
+        // Places repeat a lot (home, office...); keep one copy of each
+        Map<String, String> placePool = new HashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            Event event = events.get(i);
+            timestamps[i] = event.getTimestamp();
+            UUID uuid = EventIds.parseUuid(event.getId());
+            if (uuid != null) {
+                idMsb[i] = uuid.getMostSignificantBits();
+                idLsb[i] = uuid.getLeastSignificantBits();
+            } else {
+                if (otherIds == null) {
+                    otherIds = new String[size];
+                }
+                otherIds[i] = event.getId();
+            }
+            StringPool pool = event.getTextPool();
+            if (pool != null) {
+                if (textPools == null) {
+                    textPools = new StringPool[size];
+                    nameRefs = new int[size];
+                    placeRefs = new int[size];
+                }
+                textPools[i] = pool;
+                nameRefs[i] = event.getNameRef();
+                placeRefs[i] = event.getPlaceRef();
+            } else {
+                names[i] = event.getName();
+                String place = event.getPlace();
+                if (place != null) {
+                    String shared = placePool.get(place);
+                    if (shared == null) {
+                        placePool.put(place, place);
+                        shared = place;
+                    }
+                    places[i] = shared;
+                }
+            }
+            if (event.getCalendarEventId() != null) {
+                calendarIds[i] = event.getCalendarEventId();
+                hasCalendarId.set(i);
+            }
+            if (event.isTemporary()) {
+                temporary.set(i);
+            }
+            if (event.getRecurrence() != null) {
+                if (recurrences == null) {
+                    recurrences = new Recurrence[size];
+                }
+                recurrences[i] = event.getRecurrence();
+            }
+        }
+        return new EventTable(size, timestamps, calendarIds, idMsb, idLsb, otherIds, names, places,
+                textPools, nameRefs, placeRefs, recurrences, temporary, hasCalendarId);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int row) {
+        checkRow(row);
+        return timestamps[row];
+    }
+
+    /** Builds the id string; prefer {@link #getIdBits(int, boolean)} for comparisons. */
+    public String getId(int row) {
+        checkRow(row);
+        if (otherIds != null && otherIds[row] != null) {
+            return otherIds[row];
+        }
+        return new UUID(idMsb[row], idLsb[row]).toString();
+    }
+
+    /**
+     * One half of a UUID id without building the string, or 0 for the rare
+     * non-UUID id (only possible for data not created by this app).
+     */
+    public long getIdBits(int row, boolean mostSignificant) {
+        checkRow(row);
+        if (otherIds != null && otherIds[row] != null) {
+            return 0;
+        }
+        return mostSignificant ? idMsb[row] : idLsb[row];
+    }
+
+    public String getName(int row) {
+        checkRow(row);
+        return name(row);
+    }
+
+    public String getPlace(int row) {
+        checkRow(row);
+        return place(row);
+    }
+
+    public boolean hasCalendarEventId(int row) {
+        checkRow(row);
+        return hasCalendarId.get(row);
+    }
+
+    /** Only meaningful if {@link #hasCalendarEventId(int)}. */
+    public long getCalendarEventId(int row) {
+        checkRow(row);
+        return calendarIds[row];
+    }
+
+    public boolean isTemporary(int row) {
+        checkRow(row);
+        return temporary.get(row);
+    }
+
+    /** The repeat rule, or null for a one-off event. */
+    public Recurrence getRecurrence(int row) {
+        checkRow(row);
+        return recurrences != null ? recurrences[row] : null;
+    }
+
+    /** A standalone copy of the row, e.g. to pass to another screen. */
+    public Event toEvent(int row) {
+        Event event = new Event(getId(row), name(row), place(row), timestamps[row]);
+        if (hasCalendarId.get(row)) {
+            event.setCalendarEventId(calendarIds[row]);
+        }
+        event.setTemporary(temporary.get(row));
+        event.setRecurrence(getRecurrence(row));
+        return event;
+    }
+
+    /** A reusable cursor over this table, positioned at row 0. */
+    public Row row() {
+        return new Row(this);
+    }
+
+    /**
+     * Flyweight view of one row. Moving it costs nothing and reading through it
+     * allocates nothing (except {@link #getId()}), so one instance can serve
+     * every bind of a list.
+     */
+    public static final class Row {
+        private final EventTable table;
+        private int position;
+
+        private Row(EventTable table) {
+            this.table = table;
+        }
+
+        public Row moveTo(int position) {
+            table.checkRow(position);
+            this.position = position;
+            return this;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public long getTimestamp() {
+            return table.timestamps[position];
+        }
+
+        public String getId() {
+            return table.getId(position);
+        }
+
+        public String getName() {
+            return table.name(position);
+        }
+
+        public String getPlace() {
+            return table.place(position);
+        }
+
+        public boolean isTemporary() {
+            return table.temporary.get(position);
+        }
+
+        public boolean isRecurring() {
+            return table.recurrences != null && table.recurrences[position] != null;
+        }
+
+        public Event toEvent() {
+            return table.toEvent(position);
+        }
+    }
+
+    private String name(int row) {
+        String name = names[row];
+        if (name == null && textPools != null && textPools[row] != null) {
+            name = textPools[row].read(nameRefs[row]);
+            names[row] = name;
+        }
+        return name;
+    }
+
+    private String place(int row) {
+        String place = places[row];
+        if (place == null && textPools != null && textPools[row] != null) {
+            place = textPools[row].read(placeRefs[row]);
+            places[row] = place;
+        }
+        return place;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+        }
+    }
+}
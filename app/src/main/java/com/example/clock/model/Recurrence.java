@@ -0,0 +1,264 @@
+package com.example.clock.model;
+
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Repeat rule of a recurring event: frequency, interval, and an optional end
+ * (a number of occurrences or a last possible time, not both: RFC 5545 does
+ * not allow COUNT and UNTIL in one RRULE).
+ *
+ * The rule carries its own series start, so occurrence {@code n} is always
+ * computed from the first one (monthly on the 31st stays on the 31st where the
+ * month has one, and clamps to the last day otherwise, without drifting).
+ * Because of that the {@link Event} holding a rule may carry any one of its
+ * occurrences as its timestamp, e.g. the next one for display.
+ *
+ * Occurrences are never materialized as a list: {@link #nextAfter(long)} and
+ * {@link #cursor(long)} jump straight to the requested point in the series.
+ */
+public final class Recurrence implements Serializable {
+
+    /** Returned when there is no (further) occurrence. */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    public enum Frequency {
+        // Average step length, for estimating which occurrence a time falls on
+        DAILY(Calendar.DAY_OF_MONTH, DAY_MS),
+        WEEKLY(Calendar.WEEK_OF_YEAR, 7 * DAY_MS),
+        MONTHLY(Calendar.MONTH, 2629746000L), // 365.2425 / 12 days
+        YEARLY(Calendar.YEAR, 31556952000L); // 365.2425 days
+
+        final int calendarField;
+        final long averageStep;
+
+        Frequency(int calendarField, long averageStep) {
+            this.calendarField = calendarField;
+            this.averageStep = averageStep;
+        }
+    }
+
+    private final Frequency frequency;
+    private final int interval;
+    // 0 = no limit; only set if until isn't
+    private final int count;
+    // Long.MAX_VALUE = no limit; only set if count isn't
+    private final long until;
+    private final long start;
+
+    public Recurrence(Frequency frequency, int interval, int count, long until, long start) {
+        if (frequency == null || interval < 1 || count < 0 || (count > 0 && until != Long.MAX_VALUE)) {
+            throw new IllegalArgumentException(
+                    "Bad recurrence " + frequency + "/" + interval + "/" + count + "/" + until);
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.count = count;
+        this.until = until;
+        this.start = start;
+    }
+
+    /** Every {@code frequency} period from {@code start}, forever. */
+    public static Recurrence every(Frequency frequency, long start) {
+        return new Recurrence(frequency, 1, 0, Long.MAX_VALUE, start);
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getUntil() {
+        return until;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    /** Same rule, but with the series starting at {@code newStart}. */
+    public Recurrence withStart(long newStart) {
+        return new Recurrence(frequency, interval, count, until, newStart);
+    }
+
+    /** The first occurrence strictly after {@code time}, or {@link #NONE}. */
+    public long nextAfter(long time) {
+        Cursor cursor = cursor(time == Long.MAX_VALUE ? time : time + 1);
+        return cursor.hasNext() ? cursor.next() : NONE;
+    }
+
+    /** Lazily walks the occurrences at or after {@code from}, in order. */
+    public Cursor cursor(long from) {
+        return new Cursor(firstIndexAtOrAfter(from));
+    }
+
+    public final class Cursor {
+        private int index;
+        private long next;
+
+        private Cursor(int index) {
+            this.index = index;
+            this.next = occurrenceOrNone(index);
+        }
+
+        public boolean hasNext() {
+            return next != NONE;
+        }
+
+        public long next() {
+            if (next == NONE) {
+                throw new java.util.NoSuchElementException();
+            }
+            long current = next;
+            index++;
+            next = occurrenceOrNone(index);
+            return current;
+        }
+    }
+
+    /** Occurrence {@code index} (0 = start) ignoring the end conditions. */
+    private long occurrence(int index) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(start);
+        calendar.add(frequency.calendarField, index * interval);
+        return calendar.getTimeInMillis();
+    }
+
+    private long occurrenceOrNone(int index) {
+        if (index < 0 || (count > 0 && index >= count) || (long) index * interval > Integer.MAX_VALUE) {
+            return NONE;
+        }
+        long time = occurrence(index);
+        return time > until ? NONE : time;
+    }
+
+    private int firstIndexAtOrAfter(long from) {
+        if (from <= start) {
+            return 0;
+        }
+        // Estimate from the average step, which is off by a step or two at most
+        // (DST, month lengths), then correct in whichever direction is needed
+        int last = Integer.MAX_VALUE / interval;
+        long estimate = (from - start) / (frequency.averageStep * interval);
+        int index = (int) Math.min(estimate, last);
+        while (index > 0 && occurrence(index - 1) >= from) {
+            index--;
+        }
+        while (index < last && occurrence(index) < from) {
+            index++;
+        }
+        return index;
+    }
+
+    /** RFC 5545 RRULE value (without DTSTART), e.g. for CalendarContract. */
+    public String toRRule() {
+        StringBuilder rule = new StringBuilder("FREQ=").append(frequency.name());
+        if (interval != 1) {
+            rule.append(";INTERVAL=").append(interval);
+        }
+        if (count > 0) {
+            rule.append(";COUNT=").append(count);
+        }
+        if (until != Long.MAX_VALUE) {
+            SimpleDateFormat utc = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.US);
+            utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+            rule.append(";UNTIL=").append(utc.format(new Date(until)));
+        }
+        return rule.toString();
+    }
+
+    /**
+     * Storage form: {@code FREQ=WEEKLY;INTERVAL=2;COUNT=10;UNTIL=<ms>;START=<ms>}.
+     * Like an RRULE, but with epoch millis and the series start included.
+     */
+    public String encode() {
+        StringBuilder out = new StringBuilder("FREQ=").append(frequency.name())
+                .append(";INTERVAL=").append(interval);
+        if (count > 0) {
+            out.append(";COUNT=").append(count);
+        }
+        if (until != Long.MAX_VALUE) {
+            out.append(";UNTIL=").append(until);
+        }
+        return out.append(";START=").append(start).toString();
+    }
+
+    /** Parses {@link #encode()} output; returns null if it isn't valid. */
+    public static Recurrence decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        Frequency frequency = null;
+        int interval = 1;
+        int count = 0;
+        long until = Long.MAX_VALUE;
+        Long start = null;
+        try {
+            for (String part : encoded.split(";")) {
+                int eq = part.indexOf('=');
+                if (eq < 0) {
+                    return null;
+                }
+                String value = part.substring(eq + 1);
+                switch (part.substring(0, eq)) {
+                    case "FREQ":
+                        frequency = Frequency.valueOf(value);
+                        break;
+                    case "INTERVAL":
+                        interval = Integer.parseInt(value);
+                        break;
+                    case "COUNT":
+                        count = Integer.parseInt(value);
+                        break;
+                    case "UNTIL":
+                        until = Long.parseLong(value);
+                        break;
+                    case "START":
+                        start = Long.parseLong(value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (frequency == null || start == null) {
+                return null;
+            }
+            return new Recurrence(frequency, interval, count, until, start);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Recurrence)) {
+            return false;
+        }
+        Recurrence other = (Recurrence) o;
+        return frequency == other.frequency && interval == other.interval && count == other.count
+                && until == other.until && start == other.start;
+    }
+
+    @Override
+    public int hashCode() {
+        return encode().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.clock.model;
+
+/**
+ * Strings a store keeps in one shared block, read by reference. Lets a row
+ * point at its name and place without decoding them.
+ */
+public interface StringPool {
+    /** The string at {@code ref}, or null for a negative ref. */
+    String read(int ref);
+}
@@ -9,6 +9,9 @@ import androidx.core.app.NotificationCompat;
 
 import com.example.clock.MainActivity;
 import com.example.clock.R;
+import com.example.clock.data.EventRepository;
+import com.example.clock.model.Event;
+import com.example.clock.utils.NotificationScheduler;
 
 public class NotificationReceiver extends BroadcastReceiver {
 
@@ -16,6 +19,9 @@ public class NotificationReceiver extends BroadcastReceiver {
     public static final String EVENT_NAME = "event_name";
     public static final String EVENT_PLACE = "event_place";
     public static final String EVENT_MESSAGE = "event_message";
+    // The occurrence this reminder is for (recurring events have many)
+    public static final String EVENT_OCCURRENCE = "event_occurrence";
+    public static final String EVENT_MINUTES_BEFORE = "event_minutes_before";
 
     @Override
     public void onReceive(Context context, Intent intent) {
@@ -24,7 +30,50 @@ public class NotificationReceiver extends BroadcastReceiver {
         // String eventPlace = intent.getStringExtra(EVENT_PLACE); // Unused for now if
         // message is provided
         String eventMessage = intent.getStringExtra(EVENT_MESSAGE);
+        long occurrence = intent.getLongExtra(EVENT_OCCURRENCE, Long.MIN_VALUE);
+        int minutesBefore = intent.getIntExtra(EVENT_MINUTES_BEFORE, 0);
 
+        if (eventId == null) {
+            notify(context, null, eventName, eventMessage);
+            return;
+        }
+
+        // Look the event up directly: skip alarms for events deleted since scheduling,
+        // and show the current name if it was renamed. The lookup may hit disk when the
+        // process was started just for this alarm, so keep the broadcast alive and do it
+        // on the repository's I/O thread.
+        final PendingResult pendingResult = goAsync();
+        final Context appContext = context.getApplicationContext();
+        final EventRepository repository = EventRepository.getInstance(appContext);
+        repository.runAsync(null, () -> {
+            Event event = repository.getById(eventId);
+            // This receiver may be the only thing keeping the process alive; get any
+            // write-behind changes on disk before it finishes
+            repository.flush();
+            return event;
+        }, event -> {
+            try {
+                if (event != null) {
+                    notify(appContext, eventId, event.getName(), eventMessage);
+                    if (event.isRecurring() && minutesBefore > 0) {
+                        // Only one occurrence is armed at a time; move this reminder on to the next
+                        NotificationScheduler.scheduleNextReminder(appContext, event, minutesBefore, occurrence);
+                    }
+                }
+            } finally {
+                pendingResult.finish();
+            }
+        }, error -> {
+            // Couldn't read the events; still remind with what the alarm carried
+            try {
+                notify(appContext, eventId, eventName, eventMessage);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    private static void notify(Context context, String eventId, String eventName, String eventMessage) {
         if (eventName == null)
             return;
 
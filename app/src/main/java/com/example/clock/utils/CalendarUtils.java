@@ -11,6 +11,7 @@ import android.provider.CalendarContract;
 import androidx.core.content.ContextCompat;
 
 import com.example.clock.model.Event;
+import com.example.clock.model.Recurrence;
 
 import java.util.Calendar;
 import java.util.TimeZone;
@@ -38,8 +39,7 @@ public class CalendarUtils {
 
         ContentResolver cr = context.getContentResolver();
         ContentValues values = new ContentValues();
-        values.put(CalendarContract.Events.DTSTART, event.getTimestamp());
-        values.put(CalendarContract.Events.DTEND, event.getTimestamp() + 60 * 60 * 1000); // Assume 1 hour duration
+        putTiming(values, event, false);
         values.put(CalendarContract.Events.TITLE, event.getName());
         values.put(CalendarContract.Events.DESCRIPTION, "Added from Clock App");
         values.put(CalendarContract.Events.EVENT_LOCATION, event.getPlace());
@@ -66,8 +66,7 @@ public class CalendarUtils {
 
         ContentResolver cr = context.getContentResolver();
         ContentValues values = new ContentValues();
-        values.put(CalendarContract.Events.DTSTART, event.getTimestamp());
-        values.put(CalendarContract.Events.DTEND, event.getTimestamp() + 60 * 60 * 1000);
+        putTiming(values, event, true);
         values.put(CalendarContract.Events.TITLE, event.getName());
         values.put(CalendarContract.Events.EVENT_LOCATION, event.getPlace());
 
@@ -104,7 +103,7 @@ public class CalendarUtils {
         String[] selectionArgs = new String[] {
                 String.valueOf(calID),
                 event.getName(),
-                String.valueOf(event.getTimestamp())
+                String.valueOf(startOf(event))
         };
 
         try (Cursor cursor = context.getContentResolver().query(
@@ -122,6 +121,34 @@ public class CalendarUtils {
         return -1;
     }
 
+    /**
+     * A one-off event gets DTSTART/DTEND; a recurring one is a single row with
+     * the series start, an RRULE and a DURATION (the provider rejects DTEND on
+     * recurring rows) and the calendar expands the occurrences itself.
+     */
+    private static void putTiming(ContentValues values, Event event, boolean isUpdate) {
+        Recurrence rule = event.getRecurrence();
+        long start = startOf(event);
+        values.put(CalendarContract.Events.DTSTART, start);
+        if (rule != null) {
+            values.put(CalendarContract.Events.RRULE, rule.toRRule());
+            values.put(CalendarContract.Events.DURATION, "PT1H"); // Assume 1 hour duration
+            values.putNull(CalendarContract.Events.DTEND);
+        } else {
+            values.put(CalendarContract.Events.DTEND, start + 60 * 60 * 1000); // Assume 1 hour duration
+            if (isUpdate) {
+                // The event may have stopped repeating
+                values.putNull(CalendarContract.Events.RRULE);
+                values.putNull(CalendarContract.Events.DURATION);
+            }
+        }
+    }
+
+    private static long startOf(Event event) {
+        Recurrence rule = event.getRecurrence();
+        return rule != null ? rule.getStart() : event.getTimestamp();
+    }
+
     private static long getPrimaryCalendarId(Context context) {
         if (ContextCompat.checkSelfPermission(context,
                 Manifest.permission.READ_CALENDAR) != PackageManager.PERMISSION_GRANTED) {
@@ -1,6 +1,7 @@
 package com.example.clock.utils;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -13,14 +14,39 @@ public class ColorWheelView extends View {
 
     private Paint paint;
     private OnColorSelectedListener listener;
+    private OnColorPreviewListener previewListener;
     private int centerX;
     private int centerY;
     private float radius;
 
+    // The wheel rendered once per size; onDraw only copies it
+    private Bitmap wheel;
+
+    // Drag previews are coalesced: moves only update the pending color, and
+    // one callback per frame hands the latest one to the preview listener
+    private final float[] hsv = { 0f, 1f, 1f };
+    private int pendingColor;
+    private boolean previewPosted;
+    private final Runnable dispatchPreview = new Runnable() {
+        @Override
+        public void run() {
+            previewPosted = false;
+            if (previewListener != null) {
+                previewListener.onColorPreview(pendingColor);
+            }
+        }
+    };
+
+    /** The color picked when the finger is lifted. */
     public interface OnColorSelectedListener {
         void onColorSelected(int color);
     }
 
+    /** The color under the finger while dragging, at most once per frame. */
+    public interface OnColorPreviewListener {
+        void onColorPreview(int color);
+    }
+
     public ColorWheelView(Context context) {
         super(context);
         init();
@@ -40,6 +66,10 @@ public class ColorWheelView extends View {
         this.listener = listener;
     }
 
+    public void setOnColorPreviewListener(OnColorPreviewListener listener) {
+        this.previewListener = listener;
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
@@ -47,39 +77,77 @@ public class ColorWheelView extends View {
         centerY = h / 2;
         radius = Math.min(centerX, centerY) * 0.9f;
 
+        if (wheel != null) {
+            wheel.recycle();
+            wheel = null;
+        }
+        if (w <= 0 || h <= 0) {
+            return;
+        }
         int[] colors = new int[] {
                 Color.RED, Color.YELLOW, Color.GREEN, Color.CYAN,
                 Color.BLUE, Color.MAGENTA, Color.RED
         };
         SweepGradient sweepGradient = new SweepGradient(centerX, centerY, colors, null);
         paint.setShader(sweepGradient);
+        wheel = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        new Canvas(wheel).drawCircle(centerX, centerY, radius, paint);
+        paint.setShader(null);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        canvas.drawCircle(centerX, centerY, radius, paint);
+        if (wheel != null) {
+            canvas.drawBitmap(wheel, 0, 0, null);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(dispatchPreview);
+        previewPosted = false;
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        if (event.getAction() == MotionEvent.ACTION_DOWN || event.getAction() == MotionEvent.ACTION_MOVE) {
-            float x = event.getX() - centerX;
-            float y = event.getY() - centerY;
-            double angle = Math.atan2(y, x);
-            if (angle < 0)
-                angle += 2 * Math.PI;
-
-            // Map angle to color
-            // Simple approach: standard HSV mapping
-            float hue = (float) (angle / (2 * Math.PI)) * 360f;
-            int color = Color.HSVToColor(new float[] { hue, 1f, 1f });
-
-            if (listener != null) {
-                listener.onColorSelected(color);
-            }
-            return true;
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+                pendingColor = colorAt(event.getX(), event.getY());
+                if (!previewPosted) {
+                    previewPosted = true;
+                    postOnAnimation(dispatchPreview);
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                // The final color supersedes any preview still waiting for a frame
+                removeCallbacks(dispatchPreview);
+                previewPosted = false;
+                if (listener != null) {
+                    listener.onColorSelected(colorAt(event.getX(), event.getY()));
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                removeCallbacks(dispatchPreview);
+                previewPosted = false;
+                return true;
+            default:
+                return super.onTouchEvent(event);
         }
-        return super.onTouchEvent(event);
+    }
+
+    private int colorAt(float touchX, float touchY) {
+        float x = touchX - centerX;
+        float y = touchY - centerY;
+        double angle = Math.atan2(y, x);
+        if (angle < 0)
+            angle += 2 * Math.PI;
+
+        // Map angle to color
+        // Simple approach: standard HSV mapping
+        hsv[0] = (float) (angle / (2 * Math.PI)) * 360f;
+        return Color.HSVToColor(hsv);
     }
 }
@@ -0,0 +1,214 @@
+package com.example.clock.utils;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One tick source for every countdown in the process. Consumers subscribe
+ * with the resolution they display (seconds, minutes, or a single moment) and
+ * all of them share one scheduled callback, posted for whichever subscriber
+ * is due first.
+ *
+ * Ticks land on wall-clock boundaries: every full second or minute, optionally
+ * shifted by an anchor so they fall exactly when a countdown to that moment
+ * changes. Nothing is scheduled while there are no subscribers or no activity
+ * is started; on returning to the foreground every subscriber whose tick was
+ * missed gets one catch-up tick.
+ *
+ * Main thread only.
+ */
+public final class CountdownClock {
+
+    public enum Resolution {
+        SECONDS(1000),
+        MINUTES(60 * 1000);
+
+        final long periodMs;
+
+        Resolution(long periodMs) {
+            this.periodMs = periodMs;
+        }
+    }
+
+    public interface OnTickListener {
+        /** @param now the wall-clock time of this tick */
+        void onTick(long now);
+    }
+
+    private static CountdownClock instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable dispatch = this::dispatch;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private boolean dispatching;
+    private int startedActivities;
+
+    public static CountdownClock getInstance(Context context) {
+        if (instance == null) {
+            instance = new CountdownClock((Application) context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CountdownClock(Application application) {
+        // Activities started before this was created were never counted; one
+        // of them is most likely the caller
+        ActivityManager.RunningAppProcessInfo state = new ActivityManager.RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(state);
+        if (state.importance <= ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE) {
+            startedActivities = 1;
+        }
+        application.registerActivityLifecycleCallbacks(new ForegroundTracker());
+    }
+
+    /** Ticks on every {@code resolution} boundary of the wall clock. */
+    public Subscription subscribe(Resolution resolution, OnTickListener listener) {
+        return subscribe(resolution, 0, listener);
+    }
+
+    /**
+     * Ticks every {@code resolution}, at the moments that differ from
+     * {@code anchor} by a whole number of periods. Pass the target time of a
+     * countdown so the tick falls exactly when its displayed value changes.
+     */
+    public Subscription subscribe(Resolution resolution, long anchor, OnTickListener listener) {
+        long period = resolution.periodMs;
+        Subscription subscription = new Subscription(listener, period, Math.floorMod(anchor, period));
+        subscription.due = nextBoundary(System.currentTimeMillis(), period, subscription.anchor);
+        return add(subscription);
+    }
+
+    /** A single tick once the wall clock reaches {@code time}; then the subscription ends. */
+    public Subscription subscribeAt(long time, OnTickListener listener) {
+        Subscription subscription = new Subscription(listener, 0, 0);
+        subscription.due = time;
+        return add(subscription);
+    }
+
+    public final class Subscription {
+        private final OnTickListener listener;
+        // 0 for a one-shot subscription
+        private final long period;
+        private final long anchor;
+        private long due;
+        private boolean active = true;
+
+        private Subscription(OnTickListener listener, long period, long anchor) {
+            this.listener = listener;
+            this.period = period;
+            this.anchor = anchor;
+        }
+
+        /** No more ticks. Safe to call more than once, and from inside a tick. */
+        public void cancel() {
+            if (!active) {
+                return;
+            }
+            active = false;
+            if (!dispatching) {
+                subscriptions.remove(this);
+                schedule();
+            }
+        }
+    }
+
+    private Subscription add(Subscription subscription) {
+        subscriptions.add(subscription);
+        if (!dispatching) {
+            schedule();
+        }
+        return subscription;
+    }
+
+    private void dispatch() {
+        long now = System.currentTimeMillis();
+        dispatching = true;
+        try {
+            // By index: subscriptions added by a listener are appended and wait
+            // for their own due time, cancelled ones are only marked
+            int count = subscriptions.size();
+            for (int i = 0; i < count; i++) {
+                Subscription subscription = subscriptions.get(i);
+                if (!subscription.active || subscription.due > now) {
+                    continue;
+                }
+                if (subscription.period == 0) {
+                    subscription.active = false;
+                } else {
+                    subscription.due = nextBoundary(now, subscription.period, subscription.anchor);
+                }
+                subscription.listener.onTick(now);
+            }
+        } finally {
+            dispatching = false;
+            for (int i = subscriptions.size() - 1; i >= 0; i--) {
+                if (!subscriptions.get(i).active) {
+                    subscriptions.remove(i);
+                }
+            }
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        handler.removeCallbacks(dispatch);
+        if (startedActivities == 0 || subscriptions.isEmpty()) {
+            return;
+        }
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < subscriptions.size(); i++) {
+            next = Math.min(next, subscriptions.get(i).due);
+        }
+        handler.postDelayed(dispatch, Math.max(0, next - System.currentTimeMillis()));
+    }
+
+    /** The first {@code anchor + k * period} strictly after {@code now}. */
+    private static long nextBoundary(long now, long period, long anchor) {
+        return anchor + (Math.floorDiv(now - anchor, period) + 1) * period;
+    }
+
+    private final class ForegroundTracker implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityStarted(Activity activity) {
+            if (startedActivities++ == 0) {
+                // Back in the foreground: anything missed is due now
+                schedule();
+            }
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            if (startedActivities > 0 && --startedActivities == 0) {
+                handler.removeCallbacks(dispatch);
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.clock.utils;
+
+import android.widget.TextView;
+
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Countdown text without per-tick garbage. Produces the same text as the
+ * {@code String.format(Locale.getDefault(), "%02d...")} calls it replaces
+ * (including the locale's digits), but writes it into a reusable char buffer
+ * and hands that straight to a TextView.
+ *
+ * A TextView given a char array keeps reading from it, so each formatter must
+ * feed only one view. Not thread-safe; use from the main thread.
+ */
+public final class CountdownFormatter {
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    private static final String DATE_TIME_PATTERN = "MMM dd, yyyy • HH:mm";
+
+    // Locale-dependent bits, swapped as a whole when the default locale changes
+    private static LocaleCache localeCache;
+
+    private static final class LocaleCache {
+        final Locale locale;
+        final char zeroDigit;
+        final SimpleDateFormat dateTimeFormat;
+
+        LocaleCache(Locale locale) {
+            this.locale = locale;
+            this.zeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+            this.dateTimeFormat = new SimpleDateFormat(DATE_TIME_PATTERN, locale);
+        }
+    }
+
+    // Two buffers: the view holds on to the one last shown, the next value is
+    // written into the other
+    private char[] chars = new char[32];
+    private char[] shown = new char[32];
+    private int length;
+
+    /** Like {@code "%02dd %02dh %02dm"} of the days, hours and minutes left. */
+    public CountdownFormatter daysHoursMinutes(long millis) {
+        length = 0;
+        appendTwoDigits(millis / DAY_MS);
+        append('d').append(' ');
+        appendTwoDigits(millis / HOUR_MS % 24);
+        append('h').append(' ');
+        appendTwoDigits(millis / MINUTE_MS % 60);
+        return append('m');
+    }
+
+    /** Like {@code "%02dd %02dh"}. */
+    public CountdownFormatter daysHours(long millis) {
+        length = 0;
+        appendTwoDigits(millis / DAY_MS);
+        append('d').append(' ');
+        appendTwoDigits(millis / HOUR_MS % 24);
+        return append('h');
+    }
+
+    /** Like {@code "%02dh %02dm"}, hours within the day. */
+    public CountdownFormatter hoursMinutes(long millis) {
+        length = 0;
+        appendTwoDigits(millis / HOUR_MS % 24);
+        append('h').append(' ');
+        appendTwoDigits(millis / MINUTE_MS % 60);
+        return append('m');
+    }
+
+    /** Shows the text on {@code view}, skipping the relayout if it already shows it. */
+    public void applyTo(TextView view) {
+        if (contentEquals(view.getText())) {
+            return;
+        }
+        view.setText(chars, 0, length);
+        char[] previous = shown;
+        shown = chars;
+        chars = previous;
+    }
+
+    /** Allocates; for places that need a String anyway (e.g. RemoteViews). */
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    /** Like {@code "MMM dd, yyyy • HH:mm"} in the default locale and time zone. */
+    public static String formatDateTime(long timestamp) {
+        SimpleDateFormat format = localeCache().dateTimeFormat;
+        format.setTimeZone(TimeZone.getDefault());
+        return format.format(new Date(timestamp));
+    }
+
+    /** The default locale's zero; the other digits follow it. */
+    static char zeroDigit() {
+        return localeCache().zeroDigit;
+    }
+
+    private boolean contentEquals(CharSequence text) {
+        if (text == null || text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CountdownFormatter append(char c) {
+        ensureCapacity(length + 1);
+        chars[length++] = c;
+        return this;
+    }
+
+    private void appendTwoDigits(long value) {
+        char zero = localeCache().zeroDigit;
+        // "%02d" pads to two characters, sign included ("-1")
+        int minDigits = 2;
+        if (value < 0) {
+            append('-');
+            value = -value;
+            minDigits = 1;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int width = Math.max(minDigits, digits);
+        ensureCapacity(length + width);
+        for (int i = length + width - 1; i >= length; i--) {
+            chars[i] = (char) (zero + value % 10);
+            value /= 10;
+        }
+        length += width;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            char[] grown = new char[Math.max(capacity, chars.length * 2)];
+            System.arraycopy(chars, 0, grown, 0, length);
+            chars = grown;
+        }
+    }
+
+    private static LocaleCache localeCache() {
+        Locale locale = Locale.getDefault();
+        LocaleCache cache = localeCache;
+        if (cache == null || cache.locale != locale) {
+            cache = new LocaleCache(locale);
+            localeCache = cache;
+        }
+        return cache;
+    }
+}
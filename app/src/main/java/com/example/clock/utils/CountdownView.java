@@ -0,0 +1,311 @@
+package com.example.clock.utils;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+import com.example.clock.R;
+
+/**
+ * The big D : H : M : S countdown, drawn straight onto the canvas.
+ *
+ * Every digit sits in a fixed-width cell (the widest digit of the font), so
+ * positions are measured once and a new value never moves anything or asks
+ * for a layout. Each tick compares the new digits with the drawn ones and
+ * redraws only if a cell changed; with hardware acceleration dirty rects are
+ * ignored, so that is one invalidate() rather than one per cell. The
+ * total-hours mode (H : M, hours not wrapped at a day) is only a different
+ * set of cells, no views are shown or hidden.
+ *
+ * Nothing drawn is visible to accessibility services, so the value is also
+ * kept as the content description, updated when the minutes change.
+ */
+public class CountdownView extends View {
+
+    private static final int DAYS = 0;
+    private static final int HOURS = 1;
+    private static final int MINUTES = 2;
+    private static final int SECONDS = 3;
+    private static final int FIELD_COUNT = 4;
+    private static final int[] ALL_FIELDS = { DAYS, HOURS, MINUTES, SECONDS };
+    private static final int[] TOTAL_HOURS_FIELDS = { HOURS, MINUTES };
+
+    private static final int MIN_DIGITS = 2;
+    // Enough for any long
+    private static final int MAX_DIGITS = 19;
+
+    // What a new value changed, see writeDigits()
+    private static final int UNCHANGED = 0;
+    private static final int CHANGED = 1;
+    private static final int RELAYOUT = 2;
+
+    private Paint digitPaint;
+    private Paint separatorPaint;
+    private Paint labelPaint;
+    private float fieldMargin;
+    private String[] labels;
+    // Minutes left when the content description was last set, -1 to force it
+    private long describedMinutes = -1;
+
+    // Measured once per text size and locale
+    private char zeroDigit;
+    private float cellWidth;
+    private float separatorWidth;
+
+    private boolean totalHoursMode;
+    private int[] fields = ALL_FIELDS;
+    private long remaining;
+    private final long[] values = new long[FIELD_COUNT];
+
+    // Digits of each field as drawn, right-aligned in MAX_DIGITS slots, and
+    // how many of them are shown
+    private final char[][] digits = new char[FIELD_COUNT][MAX_DIGITS];
+    private final int[] digitCounts = new int[FIELD_COUNT];
+
+    // Layout, recomputed only when the size, mode or a field's digit count changes
+    private final float[] fieldDigitsLeft = new float[FIELD_COUNT];
+    private final float[] fieldCenter = new float[FIELD_COUNT];
+    private final float[] separatorCenter = new float[FIELD_COUNT];
+    private float digitBaseline;
+    private float labelBaseline;
+    // Below 1 when the cells don't fit the width; applied when drawing
+    private float scale = 1;
+
+    public CountdownView(Context context) {
+        super(context);
+        init();
+    }
+
+    public CountdownView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        labels = new String[] {
+                getResources().getString(R.string.countdown_days),
+                getResources().getString(R.string.countdown_hours),
+                getResources().getString(R.string.countdown_minutes),
+                getResources().getString(R.string.countdown_seconds)
+        };
+
+        digitPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        digitPaint.setTextSize(sp(96));
+        digitPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        digitPaint.setTextAlign(Paint.Align.CENTER);
+
+        separatorPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        separatorPaint.setTextSize(sp(96));
+        separatorPaint.setTextAlign(Paint.Align.CENTER);
+
+        labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        labelPaint.setTextSize(sp(12));
+        labelPaint.setTextAlign(Paint.Align.CENTER);
+
+        setDigitColor(Color.WHITE);
+        setSecondaryColor(ContextCompat.getColor(getContext(), R.color.text_secondary));
+        fieldMargin = dp(8);
+
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            digitCounts[field] = MIN_DIGITS;
+        }
+        measureGlyphs();
+        writeDigits();
+        describe();
+    }
+
+    public void setDigitColor(int color) {
+        digitPaint.setColor(color);
+        invalidate();
+    }
+
+    /** Separators and labels. */
+    public void setSecondaryColor(int color) {
+        separatorPaint.setColor(color);
+        labelPaint.setColor(color);
+        invalidate();
+    }
+
+    public boolean isTotalHoursMode() {
+        return totalHoursMode;
+    }
+
+    /** Switches between D : H : M : S and total hours : minutes. */
+    public void setTotalHoursMode(boolean totalHoursMode) {
+        if (this.totalHoursMode == totalHoursMode) {
+            return;
+        }
+        this.totalHoursMode = totalHoursMode;
+        fields = totalHoursMode ? TOTAL_HOURS_FIELDS : ALL_FIELDS;
+        describedMinutes = -1;
+        setRemaining(remaining);
+        layoutCells();
+        invalidate();
+    }
+
+    /** Time left; anything negative shows all zeros. */
+    public void setRemaining(long millis) {
+        remaining = Math.max(0, millis);
+        long totalSeconds = remaining / 1000;
+        values[DAYS] = totalSeconds / (24 * 60 * 60);
+        values[HOURS] = totalHoursMode ? totalSeconds / (60 * 60) : totalSeconds / (60 * 60) % 24;
+        values[MINUTES] = totalSeconds / 60 % 60;
+        values[SECONDS] = totalSeconds % 60;
+        describe();
+
+        if (zeroDigit != CountdownFormatter.zeroDigit()) {
+            // Locale changed: other digits, other widths
+            measureGlyphs();
+            writeDigits();
+            layoutCells();
+            invalidate();
+            return;
+        }
+        int result = writeDigits();
+        if (result == RELAYOUT) {
+            layoutCells();
+        }
+        if (result != UNCHANGED) {
+            invalidate();
+        }
+    }
+
+    /** Sets the content description once per minute; seconds would only make TalkBack chatter. */
+    private void describe() {
+        long minutes = remaining / (60 * 1000);
+        if (minutes == describedMinutes) {
+            return;
+        }
+        describedMinutes = minutes;
+        if (totalHoursMode) {
+            setContentDescription(getResources().getString(R.string.countdown_description_total_hours,
+                    values[HOURS], values[MINUTES]));
+        } else {
+            setContentDescription(getResources().getString(R.string.countdown_description,
+                    values[DAYS], values[HOURS], values[MINUTES]));
+        }
+    }
+
+    /** Writes the values' digits into their cells and reports what that changed. */
+    private int writeDigits() {
+        int result = UNCHANGED;
+        for (int field : fields) {
+            long value = values[field];
+            char[] cells = digits[field];
+            int count = 0;
+            for (int i = MAX_DIGITS - 1; i >= 0 && (value > 0 || count < MIN_DIGITS); i--) {
+                char digit = (char) (zeroDigit + value % 10);
+                if (cells[i] != digit) {
+                    cells[i] = digit;
+                    result = Math.max(result, CHANGED);
+                }
+                value /= 10;
+                count++;
+            }
+            if (count != digitCounts[field]) {
+                digitCounts[field] = count;
+                result = RELAYOUT;
+            }
+        }
+        return result;
+    }
+
+    private void measureGlyphs() {
+        zeroDigit = CountdownFormatter.zeroDigit();
+        float widest = 0;
+        char[] glyph = new char[1];
+        for (int i = 0; i < 10; i++) {
+            glyph[0] = (char) (zeroDigit + i);
+            widest = Math.max(widest, digitPaint.measureText(glyph, 0, 1));
+        }
+        cellWidth = widest;
+        separatorWidth = separatorPaint.measureText(":");
+    }
+
+    private float fieldWidth(int field) {
+        return Math.max(digitCounts[field] * cellWidth, labelPaint.measureText(labels[field])) + 2 * fieldMargin;
+    }
+
+    private void layoutCells() {
+        float total = 0;
+        for (int i = 0; i < fields.length; i++) {
+            total += fieldWidth(fields[i]) + (i > 0 ? separatorWidth : 0);
+        }
+        int contentWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        scale = contentWidth > 0 && total > contentWidth ? contentWidth / total : 1;
+        // Centered; onDraw scales around the same center when it doesn't fit
+        float x = getPaddingLeft() + (contentWidth - total) / 2;
+        for (int i = 0; i < fields.length; i++) {
+            int field = fields[i];
+            if (i > 0) {
+                separatorCenter[field] = x + separatorWidth / 2;
+                x += separatorWidth;
+            }
+            float width = fieldWidth(field);
+            fieldCenter[field] = x + width / 2;
+            fieldDigitsLeft[field] = fieldCenter[field] - digitCounts[field] * cellWidth / 2;
+            x += width;
+        }
+
+        Paint.FontMetrics digitMetrics = digitPaint.getFontMetrics();
+        digitBaseline = getPaddingTop() + fieldMargin - digitMetrics.ascent;
+        labelBaseline = digitBaseline + digitMetrics.descent - labelPaint.ascent();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // Sized for the widest common case, D : H : M : S with two digits each
+        float width = getPaddingLeft() + getPaddingRight() + 3 * separatorWidth;
+        for (int field : ALL_FIELDS) {
+            width += Math.max(MIN_DIGITS * cellWidth, labelPaint.measureText(labels[field])) + 2 * fieldMargin;
+        }
+        Paint.FontMetrics digitMetrics = digitPaint.getFontMetrics();
+        float height = getPaddingTop() + getPaddingBottom() + 2 * fieldMargin
+                + digitMetrics.descent - digitMetrics.ascent + labelPaint.descent() - labelPaint.ascent();
+        setMeasuredDimension(resolveSize((int) Math.ceil(width), widthMeasureSpec),
+                resolveSize((int) Math.ceil(height), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        layoutCells();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int saved = canvas.save();
+        canvas.scale(scale, scale, getPaddingLeft() + (getWidth() - getPaddingLeft() - getPaddingRight()) / 2f,
+                getPaddingTop());
+        for (int i = 0; i < fields.length; i++) {
+            int field = fields[i];
+            if (i > 0) {
+                canvas.drawText(":", separatorCenter[field], digitBaseline, separatorPaint);
+            }
+            int count = digitCounts[field];
+            float cellCenter = fieldDigitsLeft[field] + cellWidth / 2;
+            for (int cell = MAX_DIGITS - count; cell < MAX_DIGITS; cell++) {
+                canvas.drawText(digits[field], cell, 1, cellCenter, digitBaseline, digitPaint);
+                cellCenter += cellWidth;
+            }
+            canvas.drawText(labels[field], fieldCenter[field], labelBaseline, labelPaint);
+        }
+        canvas.restoreToCount(saved);
+    }
+
+    private float sp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, value, getResources().getDisplayMetrics());
+    }
+
+    private float dp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, getResources().getDisplayMetrics());
+    }
+}
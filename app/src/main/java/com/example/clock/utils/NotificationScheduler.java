@@ -11,6 +11,7 @@ import android.os.Build;
 import android.provider.Settings;
 
 import com.example.clock.model.Event;
+import com.example.clock.model.Recurrence;
 import com.example.clock.receiver.NotificationReceiver;
 
 public class NotificationScheduler {
@@ -30,6 +31,11 @@ public class NotificationScheduler {
         }
     }
 
+    /**
+     * Arms the reminders for the event's next occurrence only. For a recurring
+     * event the receiver re-arms each reminder for the following occurrence
+     * once it fires.
+     */
     public static void scheduleNotification(Context context, Event event) {
         AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
 
@@ -43,19 +49,39 @@ public class NotificationScheduler {
         }
 
         // Schedule 10-minute notification
-        scheduleAlarm(context, alarmManager, event, 10, "In 10 minutes at " + event.getPlace());
+        scheduleAlarm(context, alarmManager, event, Long.MIN_VALUE, 10, "In 10 minutes at " + event.getPlace());
 
         // Schedule 30-minute notification
-        scheduleAlarm(context, alarmManager, event, 30, "In 30 minutes at " + event.getPlace());
+        scheduleAlarm(context, alarmManager, event, Long.MIN_VALUE, 30, "In 30 minutes at " + event.getPlace());
     }
 
-    private static void scheduleAlarm(Context context, AlarmManager alarmManager, Event event, int minutesBefore,
-            String message) {
+    /** Re-arms one reminder of a recurring event for the first occurrence after {@code after}. */
+    public static void scheduleNextReminder(Context context, Event event, int minutesBefore, long after) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+            return;
+        }
+        scheduleAlarm(context, alarmManager, event, after, minutesBefore,
+                "In " + minutesBefore + " minutes at " + event.getPlace());
+    }
+
+    private static void scheduleAlarm(Context context, AlarmManager alarmManager, Event event, long after,
+            int minutesBefore, String message) {
+        long leadTime = (long) minutesBefore * 60 * 1000;
+        // First occurrence whose reminder is still ahead
+        long occurrence = event.nextOccurrenceAfter(Math.max(after, System.currentTimeMillis() + leadTime));
+        if (occurrence == Recurrence.NONE) {
+            return;
+        }
+        long triggerTime = occurrence - leadTime;
+
         Intent intent = new Intent(context, NotificationReceiver.class);
         intent.putExtra(NotificationReceiver.EVENT_ID, event.getId());
         intent.putExtra(NotificationReceiver.EVENT_NAME, event.getName());
         intent.putExtra(NotificationReceiver.EVENT_PLACE, event.getPlace());
         intent.putExtra(NotificationReceiver.EVENT_MESSAGE, message);
+        intent.putExtra(NotificationReceiver.EVENT_OCCURRENCE, occurrence);
+        intent.putExtra(NotificationReceiver.EVENT_MINUTES_BEFORE, minutesBefore);
 
         // Unique data URI for this specific notification time
         intent.setData(Uri.parse("event://" + event.getId() + "/" + minutesBefore));
@@ -66,18 +92,14 @@ public class NotificationScheduler {
                 intent,
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
 
-        long triggerTime = event.getTimestamp() - (long) minutesBefore * 60 * 1000;
-
-        if (triggerTime > System.currentTimeMillis()) {
-            try {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
-                } else {
-                    alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
-                }
-            } catch (SecurityException e) {
-                e.printStackTrace();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
+            } else {
+                alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
             }
+        } catch (SecurityException e) {
+            e.printStackTrace();
         }
     }
 
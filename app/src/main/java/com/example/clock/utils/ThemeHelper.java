@@ -6,6 +6,7 @@ import android.graphics.Color;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ThemeHelper {
 
@@ -15,14 +16,83 @@ public class ThemeHelper {
     // Default Purple from Android basic theme or our accent color
     public static final int DEFAULT_COLOR = Color.parseColor("#FF6200EE");
 
+    // The accent is read from the preferences once per process and kept here;
+    // everything that changes it goes through saveAccentColor, which tells the
+    // listeners so views can re-tint instead of reading it again on every bind
+    private static volatile boolean accentLoaded;
+    private static volatile int accentColor;
+    private static final List<OnAccentColorChangedListener> listeners = new CopyOnWriteArrayList<>();
+    // A color being tried out (e.g. while dragging on the color wheel): shown
+    // by the listeners but neither cached nor written. Main thread only.
+    private static boolean previewing;
+    private static int previewColor;
+
+    public interface OnAccentColorChangedListener {
+        /**
+         * Called on the thread that saved the new color (the main thread, from
+         * the UI), and for every preview step.
+         */
+        void onAccentColorChanged(int color);
+    }
+
+    public static void addOnAccentColorChangedListener(OnAccentColorChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeOnAccentColorChangedListener(OnAccentColorChangedListener listener) {
+        listeners.remove(listener);
+    }
+
     public static void saveAccentColor(Context context, int color) {
+        int shown = previewing ? previewColor : getAccentColor(context);
+        previewing = false;
+        accentColor = color;
         SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         prefs.edit().putInt(KEY_ACCENT_COLOR, color).apply();
+        if (shown != color) {
+            notifyListeners(color);
+        }
+    }
+
+    /** Shows {@code color} through the listeners without saving it; end with save or cancel. */
+    public static void previewAccentColor(int color) {
+        if (previewing && previewColor == color) {
+            return;
+        }
+        previewing = true;
+        previewColor = color;
+        notifyListeners(color);
+    }
+
+    /** Drops a preview, putting the saved accent back. */
+    public static void cancelAccentPreview(Context context) {
+        if (!previewing) {
+            return;
+        }
+        previewing = false;
+        int saved = getAccentColor(context);
+        if (previewColor != saved) {
+            notifyListeners(saved);
+        }
+    }
+
+    private static void notifyListeners(int color) {
+        for (OnAccentColorChangedListener listener : listeners) {
+            listener.onAccentColorChanged(color);
+        }
     }
 
     public static int getAccentColor(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        return prefs.getInt(KEY_ACCENT_COLOR, DEFAULT_COLOR);
+        if (!accentLoaded) {
+            synchronized (ThemeHelper.class) {
+                if (!accentLoaded) {
+                    SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                    accentColor = prefs.getInt(KEY_ACCENT_COLOR, DEFAULT_COLOR);
+                    accentLoaded = true;
+                }
+            }
+        }
+        return accentColor;
     }
 
     public static void resetToDefault(Context context) {
@@ -11,10 +11,12 @@ import android.widget.RemoteViews;
 
 import com.example.clock.MainActivity;
 import com.example.clock.R;
+import com.example.clock.data.EventCodec;
+import com.example.clock.data.EventRepository;
 import com.example.clock.model.Event;
-import com.google.gson.Gson;
+import com.example.clock.model.Recurrence;
+import com.example.clock.utils.CountdownFormatter;
 
-import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 public class CountdownWidgetProvider extends AppWidgetProvider {
@@ -22,16 +24,16 @@ public class CountdownWidgetProvider extends AppWidgetProvider {
     private static final String PREF_NAME = "widget_prefs";
     private static final String PREF_PREFIX_KEY = "appwidget_";
 
-    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId) {
-        // Load event for this widget ID / Global
-        Event event = loadEventPref(context, appWidgetId);
-
+    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId, Event event) {
         RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_countdown);
 
         if (event != null) {
             views.setTextViewText(R.id.widget_event_name, event.getName());
 
-            long diff = event.getTimestamp() - System.currentTimeMillis();
+            long now = System.currentTimeMillis();
+            // A recurring event counts down to its next occurrence; the pinned copy may be an old one
+            long next = event.nextOccurrenceAfter(now);
+            long diff = next == Recurrence.NONE ? -1 : next - now;
 
             // Apply Theme Color
             int color = com.example.clock.utils.ThemeHelper.getAccentColor(context);
@@ -40,16 +42,14 @@ public class CountdownWidgetProvider extends AppWidgetProvider {
             if (diff < 0) {
                 views.setTextViewText(R.id.widget_time_main, "Done");
             } else {
-                long days = TimeUnit.MILLISECONDS.toDays(diff);
-                long hours = TimeUnit.MILLISECONDS.toHours(diff) % 24;
-                long minutes = TimeUnit.MILLISECONDS.toMinutes(diff) % 60;
-
-                String timeString;
-                if (days > 0) {
-                    timeString = String.format(Locale.getDefault(), "%02dd %02dh", days, hours);
+                // Same text as the in-app countdowns; RemoteViews needs a String anyway
+                CountdownFormatter formatter = new CountdownFormatter();
+                if (TimeUnit.MILLISECONDS.toDays(diff) > 0) {
+                    formatter.daysHours(diff);
                 } else {
-                    timeString = String.format(Locale.getDefault(), "%02dh %02dm", hours, minutes);
+                    formatter.hoursMinutes(diff);
                 }
+                String timeString = formatter.toString();
                 views.setTextViewText(R.id.widget_time_main, timeString);
             }
         } else {
@@ -68,16 +68,41 @@ public class CountdownWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId);
+        // Render the pinned copies right away, then look the events up in the
+        // repository on its I/O thread (that may have to read the store) and
+        // re-render any that changed since they were pinned
+        final Event[] pinned = new Event[appWidgetIds.length];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            pinned[i] = loadEventPref(context, appWidgetIds[i]);
+            updateAppWidget(context, appWidgetManager, appWidgetIds[i], pinned[i]);
         }
+
+        final PendingResult pendingResult = goAsync();
+        final Context appContext = context.getApplicationContext();
+        final EventRepository repository = EventRepository.getInstance(appContext);
+        repository.runAsync(null, () -> {
+            Event[] stored = new Event[pinned.length];
+            for (int i = 0; i < pinned.length; i++) {
+                stored[i] = pinned[i] != null ? repository.getById(pinned[i].getId()) : null;
+            }
+            return stored;
+        }, stored -> {
+            try {
+                for (int i = 0; i < appWidgetIds.length; i++) {
+                    if (stored[i] != null) {
+                        updateAppWidget(appContext, appWidgetManager, appWidgetIds[i], stored[i]);
+                    }
+                }
+            } finally {
+                pendingResult.finish();
+            }
+        }, error -> pendingResult.finish()); // The pinned copies stay up
     }
 
     // Helper to save which event is associated with which widget
     public static void saveEventPref(Context context, int appWidgetId, Event event) {
         SharedPreferences.Editor prefs = context.getSharedPreferences(PREF_NAME, 0).edit();
-        Gson gson = new Gson();
-        String json = gson.toJson(event);
+        String json = EventCodec.encode(event);
         prefs.putString(PREF_PREFIX_KEY + appWidgetId, json);
         prefs.apply();
     }
@@ -89,17 +114,15 @@ public class CountdownWidgetProvider extends AppWidgetProvider {
         prefs.apply();
     }
 
-    // Helper to load event
+    // Helper to load event. This is the copy from when the widget was pinned;
+    // the repository has the current one
     public static Event loadEventPref(Context context, int appWidgetId) {
         SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, 0);
         String json = prefs.getString(PREF_PREFIX_KEY + appWidgetId, null);
         if (json == null) {
             json = prefs.getString("global_widget_event", null);
         }
-        if (json != null) {
-            return new Gson().fromJson(json, Event.class);
-        }
-        return null;
+        return EventCodec.decode(json);
     }
 
     @Override
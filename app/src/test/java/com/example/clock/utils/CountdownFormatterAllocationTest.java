@@ -0,0 +1,153 @@
+package com.example.clock.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * The formatter has to give the same text as the String.format calls it
+ * replaced, and the list's per-tick path has to allocate nothing once warmed
+ * up. Allocation is read from the JVM's per-thread counter, so this runs as a
+ * local unit test on a HotSpot JVM; elsewhere the allocation tests are skipped.
+ */
+public class CountdownFormatterAllocationTest {
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final int WARMUP_TICKS = 20_000;
+    private static final int MEASURED_TICKS = 100_000;
+
+    private Locale defaultLocale;
+
+    @Before
+    public void saveLocale() {
+        defaultLocale = Locale.getDefault();
+    }
+
+    @After
+    public void restoreLocale() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void matchesStringFormat() {
+        String[] tags = { "en", "it", "ar-EG", "fa-IR", "hi-IN" };
+        CountdownFormatter formatter = new CountdownFormatter();
+        for (String tag : tags) {
+            Locale locale = Locale.forLanguageTag(tag);
+            Locale.setDefault(locale);
+            for (long millis = 0; millis < 200 * DAY_MS; millis += 7 * 61 * MINUTE_MS + 13) {
+                long days = millis / DAY_MS;
+                long hours = millis / HOUR_MS % 24;
+                long minutes = millis / MINUTE_MS % 60;
+                assertEquals(tag, String.format(locale, "%02dd %02dh %02dm", days, hours, minutes),
+                        formatter.daysHoursMinutes(millis).toString());
+                assertEquals(tag, String.format(locale, "%02dd %02dh", days, hours),
+                        formatter.daysHours(millis).toString());
+                assertEquals(tag, String.format(locale, "%02dh %02dm", hours, minutes),
+                        formatter.hoursMinutes(millis).toString());
+            }
+        }
+    }
+
+    /** EventAdapter's tick: each row on screen formats its countdown into its TextView. */
+    @Test
+    public void listTickDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        assumeTrue("No per-thread allocation counter on this JVM", threads != null);
+        Locale.setDefault(Locale.US);
+        CountdownFormatter formatter = new CountdownFormatter();
+        TextView view = new TextView(null);
+
+        runListTicks(formatter, view, WARMUP_TICKS);
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        runListTicks(formatter, view, MEASURED_TICKS);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        // The counter's own bookkeeping may show up as a few bytes in total,
+        // but nothing near one allocation per tick
+        assertTrue("List ticks allocated " + allocated + " bytes", allocated < MEASURED_TICKS);
+    }
+
+    /**
+     * The widget's update needs a String for RemoteViews and builds a fresh
+     * formatter each time; it should still cost less than String.format did.
+     */
+    @Test
+    public void widgetUpdateAllocatesLessThanStringFormat() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        assumeTrue("No per-thread allocation counter on this JVM", threads != null);
+        Locale.setDefault(Locale.US);
+        long thread = Thread.currentThread().getId();
+
+        long length = runWidgetUpdates(WARMUP_TICKS);
+        long before = threads.getThreadAllocatedBytes(thread);
+        length += runWidgetUpdates(MEASURED_TICKS);
+        long formatter = threads.getThreadAllocatedBytes(thread) - before;
+
+        length += runStringFormatUpdates(WARMUP_TICKS);
+        before = threads.getThreadAllocatedBytes(thread);
+        length += runStringFormatUpdates(MEASURED_TICKS);
+        long stringFormat = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue("Widget updates allocated " + formatter + " bytes, String.format " + stringFormat,
+                length > 0 && formatter < stringFormat);
+    }
+
+    private static void runListTicks(CountdownFormatter formatter, TextView view, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            formatter.daysHoursMinutes(i * 60_013L).applyTo(view);
+        }
+    }
+
+    /** As CountdownWidgetProvider.updateAppWidget builds its text. */
+    private static long runWidgetUpdates(int ticks) {
+        long length = 0;
+        for (int i = 0; i < ticks; i++) {
+            long diff = i * 60_013L;
+            CountdownFormatter formatter = new CountdownFormatter();
+            if (diff >= DAY_MS) {
+                formatter.daysHours(diff);
+            } else {
+                formatter.hoursMinutes(diff);
+            }
+            length += formatter.toString().length();
+        }
+        return length;
+    }
+
+    private static long runStringFormatUpdates(int ticks) {
+        Locale locale = Locale.getDefault();
+        long length = 0;
+        for (int i = 0; i < ticks; i++) {
+            long diff = i * 60_013L;
+            String text = diff >= DAY_MS
+                    ? String.format(locale, "%02dd %02dh", diff / DAY_MS, diff / HOUR_MS % 24)
+                    : String.format(locale, "%02dh %02dm", diff / HOUR_MS % 24, diff / MINUTE_MS % 60);
+            length += text.length();
+        }
+        return length;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}